@@ -16,9 +16,17 @@ package org.openmrs.module.coreapps;
 import java.util.List;
 import java.util.Map;
 
+import org.openmrs.module.coreapps.layout.AddressLayout;
+
 public interface AddressSupportCompatibility {
 
 	Map<String, String> getNameMappings();
 	
 	List<String> getLineByLineFormat();
+	
+	/**
+	 * @return the line by line format of the default layout template, compiled once for as long as it stays the default
+	 *         one
+	 */
+	AddressLayout getAddressLayout();
 }
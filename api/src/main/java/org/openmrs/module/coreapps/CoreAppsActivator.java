@@ -22,6 +22,7 @@ import org.openmrs.module.BaseModuleActivator;
 import org.openmrs.module.ModuleActivator;
 import org.openmrs.module.ModuleFactory;
 import org.openmrs.module.appframework.feature.FeatureToggleProperties;
+import org.openmrs.module.coreapps.diagnosis.DiagnosisConceptIndex;
 import org.openmrs.module.coreapps.htmlformentry.CodedOrFreeTextObsTagHandler;
 import org.openmrs.module.coreapps.htmlformentry.EncounterDiagnosesTagHandler;
 import org.openmrs.module.coreapps.htmlformentry.EncounterDispositionTagHandler;
@@ -97,7 +98,15 @@ public class CoreAppsActivator extends BaseModuleActivator {
 
             htmlFormEntryService.addHandler(CoreAppsConstants.HTMLFORMENTRY_CODED_OR_FREE_TEXT_OBS_TAG_NAME, new CodedOrFreeTextObsTagHandler());
         }
-        
+
+        // build the diagnosis search index now rather than on the first search
+        try {
+            Context.getRegisteredComponent("coreapps.diagnosisConceptIndex", DiagnosisConceptIndex.class).rebuild(
+                    emrApiProperties.getDiagnosisSets(), emrApiProperties.getConceptSourcesForDiagnosisSearch());
+        } catch (Exception ex) {
+            log.warn("Unable to build the diagnosis search index, it will be built on the first search", ex);
+        }
+
 		log.info("Core Apps Module refreshed");
 	}
 	
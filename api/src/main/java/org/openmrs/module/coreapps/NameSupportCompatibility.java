@@ -16,6 +16,8 @@ package org.openmrs.module.coreapps;
 import java.util.List;
 import java.util.Map;
 
+import org.openmrs.module.coreapps.layout.NameLayout;
+
 public interface NameSupportCompatibility {
 
 	List<List<Map<String, String>>> getLines();
@@ -23,4 +25,9 @@ public interface NameSupportCompatibility {
 	String getLayoutToken();
 	
 	Map<String, String> getNameMappings();
+	
+	/**
+	 * @return the default layout template, compiled once for as long as it stays the default one
+	 */
+	NameLayout getNameLayout();
 }
@@ -0,0 +1,67 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.coreapps.cache;
+
+import org.openmrs.Concept;
+import org.openmrs.api.ConceptService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+/**
+ * Caches the ids of the concepts that concept mappings (like CIEL:12345) refer to, for screens that look up the same
+ * configured concepts by mapping on every render. The concepts themselves are still loaded through the ConceptService.
+ * The cache is cleared by {@link ConceptMappingCacheInvalidationAdvice} whenever concepts, reference terms or sources
+ * change.
+ */
+@Component("coreapps.conceptMappingCache")
+public class ConceptMappingCache {
+
+	private static final int MAX_SIZE = 1000;
+
+	@Autowired
+	@Qualifier("conceptService")
+	private ConceptService conceptService;
+
+	private final LruCache<String, Integer> conceptIds = new LruCache<String, Integer>(MAX_SIZE);
+
+	public void setConceptService(ConceptService conceptService) {
+		this.conceptService = conceptService;
+	}
+
+	/**
+	 * @return the concept mapped to the given code in the given source, or null if there is none
+	 * @see ConceptService#getConceptByMapping(String, String)
+	 */
+	public Concept getConceptByMapping(String code, String sourceName) {
+		String key = sourceName + ":" + code;
+		Integer conceptId = conceptIds.get(key);
+		if (conceptId != null) {
+			Concept concept = conceptService.getConcept(conceptId);
+			if (concept != null) {
+				return concept;
+			}
+		}
+
+		Concept concept = conceptService.getConceptByMapping(code, sourceName);
+		if (concept != null) {
+			conceptIds.put(key, concept.getConceptId());
+		}
+		return concept;
+	}
+
+	public void clear() {
+		conceptIds.clear();
+	}
+}
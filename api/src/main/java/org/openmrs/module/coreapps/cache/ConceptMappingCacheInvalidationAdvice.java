@@ -0,0 +1,42 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.coreapps.cache;
+
+import java.lang.reflect.Method;
+
+import org.openmrs.Concept;
+import org.openmrs.ConceptReferenceTerm;
+import org.openmrs.ConceptSource;
+import org.openmrs.api.context.Context;
+import org.springframework.aop.AfterReturningAdvice;
+
+/**
+ * Clears the {@link ConceptMappingCache} when a concept, reference term or concept source is changed through the
+ * ConceptService, since any of them may change what a mapping refers to. Registered on the ConceptService in
+ * config.xml.
+ */
+public class ConceptMappingCacheInvalidationAdvice implements AfterReturningAdvice {
+
+	@Override
+	public void afterReturning(Object returnValue, Method method, Object[] args, Object target) throws Throwable {
+		String name = method.getName();
+		if (name.startsWith("save") || name.startsWith("retire") || name.startsWith("unretire")
+		        || name.startsWith("purge")) {
+			if (args != null && args.length > 0
+			        && (args[0] instanceof Concept || args[0] instanceof ConceptReferenceTerm || args[0] instanceof ConceptSource)) {
+				Context.getRegisteredComponent("coreapps.conceptMappingCache", ConceptMappingCache.class).clear();
+			}
+		}
+	}
+}
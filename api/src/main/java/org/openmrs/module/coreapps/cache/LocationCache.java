@@ -0,0 +1,81 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.coreapps.cache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openmrs.Location;
+import org.openmrs.api.LocationService;
+import org.openmrs.ui.framework.UiUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+/**
+ * Caches how locations are displayed, by location id and locale, for displaying obs whose answers are locations (e.g.
+ * admission and transfer locations), which typically refer to the same handful of wards over and over. Only the
+ * formatted names are kept, not the locations themselves, which would outlive the session they were loaded in and be
+ * shared by concurrent requests. Entries are evicted by {@link LocationCacheInvalidationAdvice} whenever a location
+ * is saved, retired, unretired or purged.
+ */
+@Component("coreapps.locationCache")
+public class LocationCache {
+
+	private static final int MAX_SIZE = 500;
+
+	@Autowired
+	@Qualifier("locationService")
+	private LocationService locationService;
+
+	// location id -> locale -> formatted name
+	private final LruCache<Integer, Map<String, String>> formattedNames = new LruCache<Integer, Map<String, String>>(
+	        MAX_SIZE);
+
+	public void setLocationService(LocationService locationService) {
+		this.locationService = locationService;
+	}
+
+	/**
+	 * @return the location with the given id formatted by uiUtils, or what uiUtils formats null as if there is no such
+	 *         location
+	 */
+	public String format(Integer locationId, UiUtils uiUtils) {
+		Map<String, String> byLocale = formattedNames.get(locationId);
+		String locale = String.valueOf(uiUtils.getLocale());
+		String formattedName = byLocale == null ? null : byLocale.get(locale);
+		if (formattedName == null) {
+			Location location = locationService.getLocation(locationId);
+			if (location == null) {
+				return uiUtils.format((Object) null);
+			}
+
+			formattedName = uiUtils.format(location);
+			if (byLocale == null) {
+				byLocale = new ConcurrentHashMap<String, String>();
+				formattedNames.put(locationId, byLocale);
+			}
+			byLocale.put(locale, formattedName);
+		}
+		return formattedName;
+	}
+
+	public void evict(Integer locationId) {
+		formattedNames.remove(locationId);
+	}
+
+	public void clear() {
+		formattedNames.clear();
+	}
+}
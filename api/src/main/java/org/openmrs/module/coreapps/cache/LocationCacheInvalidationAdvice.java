@@ -0,0 +1,58 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.coreapps.cache;
+
+import java.lang.reflect.Method;
+
+import org.openmrs.Location;
+import org.openmrs.api.context.Context;
+import org.springframework.aop.AfterReturningAdvice;
+
+/**
+ * Evicts locations from the {@link LocationCache} when they are changed through the LocationService. Registered on
+ * the LocationService in config.xml.
+ */
+public class LocationCacheInvalidationAdvice implements AfterReturningAdvice {
+
+	private LocationCache locationCache;
+
+	public void setLocationCache(LocationCache locationCache) {
+		this.locationCache = locationCache;
+	}
+
+	@Override
+	public void afterReturning(Object returnValue, Method method, Object[] args, Object target) throws Throwable {
+		String name = method.getName();
+		if (name.startsWith("save") || name.startsWith("retire") || name.startsWith("unretire")
+		        || name.startsWith("purge")) {
+			LocationCache locationCache = getLocationCache();
+			if (args != null && args.length > 0 && args[0] instanceof Location) {
+				Integer locationId = ((Location) args[0]).getLocationId();
+				if (locationId != null) {
+					locationCache.evict(locationId);
+				}
+			} else {
+				// e.g. a location tag or attribute type changed
+				locationCache.clear();
+			}
+		}
+	}
+
+	private LocationCache getLocationCache() {
+		if (locationCache == null) {
+			locationCache = Context.getRegisteredComponent("coreapps.locationCache", LocationCache.class);
+		}
+		return locationCache;
+	}
+}
@@ -0,0 +1,71 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.coreapps.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A simple thread-safe map that holds at most a given number of entries, evicting the least recently used one when
+ * it is full.
+ */
+public class LruCache<K, V> {
+
+	private final Map<K, V> entries;
+
+	public LruCache(final int maxSize) {
+		entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+				if (size() > maxSize) {
+					evicted(eldest.getKey(), eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	public synchronized V get(K key) {
+		return entries.get(key);
+	}
+
+	public synchronized boolean containsKey(K key) {
+		return entries.containsKey(key);
+	}
+
+	public synchronized void put(K key, V value) {
+		entries.put(key, value);
+	}
+
+	public synchronized void remove(K key) {
+		entries.remove(key);
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Called, while holding the lock of this cache, when the least recently used entry is evicted to make room for a
+	 * new one. Does nothing by default.
+	 */
+	protected void evicted(K key, V value) {
+	}
+}
@@ -0,0 +1,101 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.coreapps.cache;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.openmrs.Patient;
+import org.openmrs.Role;
+import org.openmrs.User;
+import org.springframework.stereotype.Component;
+
+/**
+ * Caches the rendered visit list of the patient dashboard. The key includes a per-patient version, which
+ * {@link VisitListCacheInvalidationAdvice} increments whenever a visit, encounter or obs of the patient changes, so
+ * stale entries are never used again and just age out of the cache. Only the versions of the most recently changed
+ * patients are remembered.
+ * <p/>
+ * The key also includes the locale, the user's roles (which determine what the user may see and do) and the current
+ * date (the edit visit dates dialogs are limited by today's date).
+ */
+@Component("coreapps.visitListCache")
+public class VisitListCache {
+
+	private static final int MAX_SIZE = 200;
+
+	private static final int MAX_PATIENT_VERSIONS = 10000;
+
+	private final LruCache<String, String> renderedVisitLists = new LruCache<String, String>(MAX_SIZE);
+
+	private final LruCache<Integer, Long> patientVersions = new LruCache<Integer, Long>(MAX_PATIENT_VERSIONS) {
+
+		@Override
+		protected void evicted(Integer patientId, Long version) {
+			// only ever called from patientChanged, which holds the lock of the visit list cache
+			highestEvictedVersion = Math.max(highestEvictedVersion, version);
+		}
+	};
+
+	// incremented when the whole cache is cleared
+	private long generation = 0;
+
+	private long lastPatientVersion = 0;
+
+	// the version of the patients whose version is no longer known, so that none of them can go back to a version
+	// that their stale visit lists were cached under
+	private long highestEvictedVersion = 0;
+
+	public String getKey(Patient patient, User user, Locale locale) {
+		Set<String> roles = new TreeSet<String>();
+		if (user != null) {
+			for (Role role : user.getAllRoles()) {
+				roles.add(role.getRole());
+			}
+		}
+
+		return patient.getPatientId() + "|" + getVersion(patient.getPatientId()) + "|" + locale + "|" + roles + "|"
+		        + new SimpleDateFormat("yyyyMMdd").format(new Date());
+	}
+
+	/**
+	 * @return the rendered visit list for the key, or null if not cached
+	 */
+	public String get(String key) {
+		return renderedVisitLists.get(key);
+	}
+
+	public void put(String key, String renderedVisitList) {
+		renderedVisitLists.put(key, renderedVisitList);
+	}
+
+	public synchronized void patientChanged(Integer patientId) {
+		patientVersions.put(patientId, ++lastPatientVersion);
+	}
+
+	public synchronized void clear() {
+		patientVersions.clear();
+		highestEvictedVersion = 0;
+		renderedVisitLists.clear();
+		++generation;
+	}
+
+	private synchronized String getVersion(Integer patientId) {
+		Long patientVersion = patientVersions.get(patientId);
+		return generation + "." + (patientVersion == null ? highestEvictedVersion : patientVersion);
+	}
+}
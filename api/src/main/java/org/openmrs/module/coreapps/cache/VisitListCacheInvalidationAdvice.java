@@ -0,0 +1,83 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.coreapps.cache;
+
+import java.lang.reflect.Method;
+
+import org.openmrs.Encounter;
+import org.openmrs.Obs;
+import org.openmrs.Visit;
+import org.openmrs.api.context.Context;
+import org.springframework.aop.AfterReturningAdvice;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Marks a patient's rendered visit list as stale when one of the patient's visits, encounters or obs is changed.
+ * Registered on the VisitService, EncounterService and ObsService in config.xml.
+ * <p/>
+ * If the change is made within a transaction, the list is marked as stale once more after the transaction commits,
+ * since a list rendered by another request before then would still show the list as it was before the change.
+ */
+public class VisitListCacheInvalidationAdvice implements AfterReturningAdvice {
+
+	private VisitListCache visitListCache;
+
+	public void setVisitListCache(VisitListCache visitListCache) {
+		this.visitListCache = visitListCache;
+	}
+
+	@Override
+	public void afterReturning(Object returnValue, Method method, Object[] args, Object target) throws Throwable {
+		if (args == null || args.length == 0 || !isChange(method.getName())) {
+			return;
+		}
+
+		Integer patientId = null;
+		if (args[0] instanceof Visit && ((Visit) args[0]).getPatient() != null) {
+			patientId = ((Visit) args[0]).getPatient().getPatientId();
+		} else if (args[0] instanceof Encounter && ((Encounter) args[0]).getPatient() != null) {
+			patientId = ((Encounter) args[0]).getPatient().getPatientId();
+		} else if (args[0] instanceof Obs && ((Obs) args[0]).getPerson() != null) {
+			patientId = ((Obs) args[0]).getPerson().getPersonId();
+		}
+
+		if (patientId != null) {
+			final VisitListCache visitListCache = getVisitListCache();
+			final Integer changedPatientId = patientId;
+			visitListCache.patientChanged(changedPatientId);
+			if (TransactionSynchronizationManager.isSynchronizationActive()) {
+				TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+					@Override
+					public void afterCommit() {
+						visitListCache.patientChanged(changedPatientId);
+					}
+				});
+			}
+		}
+	}
+
+	private VisitListCache getVisitListCache() {
+		if (visitListCache == null) {
+			visitListCache = Context.getRegisteredComponent("coreapps.visitListCache", VisitListCache.class);
+		}
+		return visitListCache;
+	}
+
+	private boolean isChange(String methodName) {
+		return methodName.startsWith("save") || methodName.startsWith("void") || methodName.startsWith("unvoid")
+		        || methodName.startsWith("purge") || methodName.startsWith("end");
+	}
+}
@@ -9,23 +9,18 @@ import org.openmrs.Patient;
  */
 public class PatientContextModel {
 
-    private PersonContextModel person;
+    private final Patient patient;
 
-    /**
-     * @deprecated this will disappear for consistency with web services, so prefer to use the uuid property
-     */
-    @Deprecated
-    private Integer patientId;
-
-    private String uuid;
+    private PersonContextModel person;
 
     public PatientContextModel(Patient patient) {
-        this.person = new PersonContextModel(patient);
-        this.patientId = patient.getPatientId();
-        this.uuid = patient.getUuid();
+        this.patient = patient;
     }
 
     public PersonContextModel getPerson() {
+        if (person == null) {
+            person = new PersonContextModel(patient);
+        }
         return person;
     }
 
@@ -34,11 +29,11 @@ public class PatientContextModel {
      */
     @Deprecated
     public Integer getPatientId() {
-        return patientId;
+        return patient.getPatientId();
     }
 
     public String getUuid() {
-        return uuid;
+        return patient.getUuid();
     }
 
 }
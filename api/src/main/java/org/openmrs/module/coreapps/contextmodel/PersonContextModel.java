@@ -11,42 +11,30 @@ import java.util.Date;
  */
 public class PersonContextModel {
 
-    private String uuid;
-
-    private Date birthdate;
-
-    private boolean birthdateEstimated;
-
-    private String gender;
-
-    private boolean dead;
+    private final Person person;
 
     public PersonContextModel(Person person) {
-        this.uuid = person.getUuid();
-        this.birthdate = person.getBirthdate();
-        this.birthdateEstimated = person.getBirthdateEstimated();
-        this.gender = person.getGender();
-        this.dead = person.getDead();
+        this.person = person;
     }
 
     public String getUuid() {
-        return uuid;
+        return person.getUuid();
     }
 
     public Date getBirthdate() {
-        return birthdate;
+        return person.getBirthdate();
     }
 
     public boolean isBirthdateEstimated() {
-        return birthdateEstimated;
+        return Boolean.TRUE.equals(person.getBirthdateEstimated());
     }
 
     public String getGender() {
-        return gender;
+        return person.getGender();
     }
 
     public boolean isDead() {
-        return dead;
+        return Boolean.TRUE.equals(person.getDead());
     }
 
 }
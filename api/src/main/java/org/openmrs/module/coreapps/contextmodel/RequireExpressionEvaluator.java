@@ -0,0 +1,462 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.coreapps.contextmodel;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openmrs.module.appframework.context.AppContextModel;
+import org.openmrs.module.coreapps.cache.LruCache;
+
+/**
+ * Evaluates the require expressions of extensions against an {@link AppContextModel}, the way the AppFrameworkService
+ * does: as javascript, against the JSON form of the model's entries, an expression being met only if it evaluates to
+ * something equal to true, and not if it fails.
+ * <p/>
+ * Each expression is compiled once and cached. The simple ones, property paths combined with !, &&, || and brackets
+ * (e.g. <code>visit.active</code> or <code>!patient.person.dead</code>), are evaluated in plain Java, reading the
+ * boolean properties of the coreapps context models and of maps. The others are compiled by the script engine and
+ * evaluated against bindings built once per evaluator. Expressions calling functions are left to the
+ * AppFrameworkService, which is what defines the functions they may call.
+ * <p/>
+ * Since the bindings are built from the model the first time they are needed, an evaluator should be created for each
+ * context model, and not be used once the model changes. It is not thread-safe.
+ */
+public class RequireExpressionEvaluator {
+
+	private static final Log log = LogFactory.getLog(RequireExpressionEvaluator.class);
+
+	private static final int MAX_EXPRESSIONS = 1000;
+
+	private static final LruCache<String, Expression> expressions = new LruCache<String, Expression>(MAX_EXPRESSIONS);
+
+	private static final Map<Class<?>, Map<String, Method>> getters = new ConcurrentHashMap<Class<?>, Map<String, Method>>();
+
+	private static final Pattern FUNCTION_CALL = Pattern.compile("[\\w$)\\]]\\s*\\(");
+
+	private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_$][\\w$]*");
+
+	private static final String[] KEYWORDS = { "true", "false", "null", "undefined", "this", "new", "typeof", "void",
+	        "delete", "in", "instanceof", "function" };
+
+	private static final ObjectMapper jackson = new ObjectMapper();
+
+	// may be null, on JVMs that come without a javascript engine
+	private static final ScriptEngine engine = new ScriptEngineManager().getEngineByName("JavaScript");
+
+	private final AppContextModel contextModel;
+
+	private Bindings bindings;
+
+	public RequireExpressionEvaluator(AppContextModel contextModel) {
+		this.contextModel = contextModel;
+	}
+
+	/**
+	 * @param require the require expression of an extension, which is met if blank
+	 * @return whether the expression is met, or null if it can only be evaluated by the AppFrameworkService
+	 */
+	public Boolean evaluate(String require) {
+		if (StringUtils.isBlank(require)) {
+			return true;
+		}
+
+		Expression expression = expressions.get(require);
+		if (expression == null) {
+			expression = compile(require);
+			expressions.put(require, expression);
+		}
+		return expression.evaluate(this);
+	}
+
+	static Expression compile(String require) {
+		if (FUNCTION_CALL.matcher(require).find()) {
+			return UNSUPPORTED;
+		}
+
+		Node simple = new Parser(require).parse();
+		return simple == null ? new ScriptExpression(require) : new SimpleExpression(require, simple);
+	}
+
+	private Bindings getBindings() throws Exception {
+		if (bindings == null) {
+			Bindings modelBindings = engine.createBindings();
+			for (Map.Entry<String, Object> entry : contextModel.entrySet()) {
+				engine.eval("var " + entry.getKey() + " = " + jackson.writeValueAsString(entry.getValue()) + ";",
+				    modelBindings);
+			}
+			bindings = modelBindings;
+		}
+		return bindings;
+	}
+
+	/**
+	 * Reads the value of a property, as it would be read from the JSON form of the object
+	 */
+	private static Object getProperty(Object obj, String property) {
+		if (obj instanceof Map) {
+			Map<?, ?> map = (Map<?, ?>) obj;
+			return map.containsKey(property) ? map.get(property) : Undefined.INSTANCE;
+		}
+		if (!obj.getClass().getPackage().getName().equals(RequireExpressionEvaluator.class.getPackage().getName())) {
+			throw new NotSimpleException();
+		}
+
+		Method getter = getGetters(obj.getClass()).get(property);
+		if (getter == null) {
+			return Undefined.INSTANCE;
+		}
+		try {
+			return getter.invoke(obj);
+		}
+		catch (IllegalAccessException e) {
+			throw new IllegalStateException("Cannot read property " + property + " of " + obj.getClass(), e);
+		}
+		catch (InvocationTargetException e) {
+			throw new IllegalStateException("Cannot read property " + property + " of " + obj.getClass(), e.getCause());
+		}
+	}
+
+	private static Map<String, Method> getGetters(Class<?> clazz) {
+		Map<String, Method> classGetters = getters.get(clazz);
+		if (classGetters == null) {
+			classGetters = new HashMap<String, Method>();
+			try {
+				for (PropertyDescriptor descriptor : Introspector.getBeanInfo(clazz, Object.class).getPropertyDescriptors()) {
+					if (descriptor.getReadMethod() != null) {
+						classGetters.put(descriptor.getName(), descriptor.getReadMethod());
+					}
+				}
+			}
+			catch (IntrospectionException e) {
+				throw new IllegalStateException("Cannot introspect " + clazz, e);
+			}
+			getters.put(clazz, classGetters);
+		}
+		return classGetters;
+	}
+
+	abstract static class Expression {
+
+		/**
+		 * @return whether the expression is met, or null if it can only be evaluated by the AppFrameworkService
+		 */
+		abstract Boolean evaluate(RequireExpressionEvaluator evaluator);
+	}
+
+	private static final Expression UNSUPPORTED = new Expression() {
+
+		@Override
+		Boolean evaluate(RequireExpressionEvaluator evaluator) {
+			return null;
+		}
+	};
+
+	/**
+	 * An expression evaluated in java, falling back to the script engine for values it does not handle
+	 */
+	static class SimpleExpression extends Expression {
+
+		private final String require;
+
+		private final Node node;
+
+		private volatile ScriptExpression script;
+
+		SimpleExpression(String require, Node node) {
+			this.require = require;
+			this.node = node;
+		}
+
+		@Override
+		Boolean evaluate(RequireExpressionEvaluator evaluator) {
+			try {
+				return node.evaluate(evaluator.contextModel);
+			}
+			catch (ScriptErrorException e) {
+				// the script would fail, e.g. reading a property of null, so the expression is not met
+				return false;
+			}
+			catch (NotSimpleException e) {
+				if (script == null) {
+					script = new ScriptExpression(require);
+				}
+				return script.evaluate(evaluator);
+			}
+		}
+	}
+
+	static class ScriptExpression extends Expression {
+
+		private final String script;
+
+		private CompiledScript compiled;
+
+		ScriptExpression(String require) {
+			this.script = "(" + require + ") == true";
+			if (engine instanceof Compilable) {
+				try {
+					compiled = ((Compilable) engine).compile(script);
+				}
+				catch (ScriptException e) {
+					// evaluating it will fail the same way, and be logged then
+				}
+			}
+		}
+
+		@Override
+		Boolean evaluate(RequireExpressionEvaluator evaluator) {
+			if (engine == null) {
+				return null;
+			}
+			synchronized (engine) {
+				try {
+					Object result = compiled == null ? engine.eval(script, evaluator.getBindings()) : compiled
+					        .eval(evaluator.getBindings());
+					return Boolean.TRUE.equals(result);
+				}
+				catch (Exception e) {
+					log.error("Failed to evaluate require expression: " + script, e);
+					return false;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Thrown when the value of a simple expression cannot be worked out in java
+	 */
+	private static class NotSimpleException extends RuntimeException {}
+
+	/**
+	 * Thrown when evaluating a simple expression as a script would fail
+	 */
+	private static class ScriptErrorException extends RuntimeException {}
+
+	private static class Undefined {
+
+		static final Undefined INSTANCE = new Undefined();
+	}
+
+	abstract static class Node {
+
+		abstract boolean evaluate(AppContextModel contextModel);
+	}
+
+	private static class PathNode extends Node {
+
+		private final List<String> path;
+
+		PathNode(List<String> path) {
+			this.path = path;
+		}
+
+		@Override
+		boolean evaluate(AppContextModel contextModel) {
+			if (!contextModel.containsKey(path.get(0))) {
+				throw new ScriptErrorException();
+			}
+
+			Object value = contextModel.get(path.get(0));
+			for (String property : path.subList(1, path.size())) {
+				if (value == null || value == Undefined.INSTANCE) {
+					throw new ScriptErrorException();
+				}
+				value = getProperty(value, property);
+			}
+
+			if (!(value instanceof Boolean)) {
+				throw new NotSimpleException();
+			}
+			return (Boolean) value;
+		}
+	}
+
+	private static class NotNode extends Node {
+
+		private final Node operand;
+
+		NotNode(Node operand) {
+			this.operand = operand;
+		}
+
+		@Override
+		boolean evaluate(AppContextModel contextModel) {
+			return !operand.evaluate(contextModel);
+		}
+	}
+
+	private static class AndNode extends Node {
+
+		private final Node left;
+
+		private final Node right;
+
+		AndNode(Node left, Node right) {
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		boolean evaluate(AppContextModel contextModel) {
+			return left.evaluate(contextModel) && right.evaluate(contextModel);
+		}
+	}
+
+	private static class OrNode extends Node {
+
+		private final Node left;
+
+		private final Node right;
+
+		OrNode(Node left, Node right) {
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		boolean evaluate(AppContextModel contextModel) {
+			return left.evaluate(contextModel) || right.evaluate(contextModel);
+		}
+	}
+
+	/**
+	 * Parses expressions made of property paths, !, &&, || and brackets, with the usual precedence
+	 */
+	private static class Parser {
+
+		private final List<String> tokens = new ArrayList<String>();
+
+		private int position;
+
+		Parser(String require) {
+			int i = 0;
+			while (i < require.length()) {
+				char c = require.charAt(i);
+				if (Character.isWhitespace(c)) {
+					i++;
+				} else if (require.startsWith("&&", i) || require.startsWith("||", i)) {
+					tokens.add(require.substring(i, i + 2));
+					i += 2;
+				} else if (c == '!' && !require.startsWith("!=", i) || c == '.' || c == '(' || c == ')') {
+					tokens.add(String.valueOf(c));
+					i++;
+				} else {
+					int end = i;
+					while (end < require.length() && (Character.isLetterOrDigit(require.charAt(end))
+					        || require.charAt(end) == '_' || require.charAt(end) == '$')) {
+						end++;
+					}
+					// anything else (comparisons, literals, ...) is left to the script engine
+					tokens.add(end > i ? require.substring(i, end) : null);
+					i = Math.max(end, i + 1);
+				}
+			}
+		}
+
+		/**
+		 * @return the parsed expression, or null if it is not a simple one
+		 */
+		Node parse() {
+			if (tokens.contains(null)) {
+				return null;
+			}
+			Node node = parseOr();
+			return node != null && position == tokens.size() ? node : null;
+		}
+
+		private Node parseOr() {
+			Node node = parseAnd();
+			while (node != null && accept("||")) {
+				Node right = parseAnd();
+				node = right == null ? null : new OrNode(node, right);
+			}
+			return node;
+		}
+
+		private Node parseAnd() {
+			Node node = parseUnary();
+			while (node != null && accept("&&")) {
+				Node right = parseUnary();
+				node = right == null ? null : new AndNode(node, right);
+			}
+			return node;
+		}
+
+		private Node parseUnary() {
+			if (accept("!")) {
+				Node operand = parseUnary();
+				return operand == null ? null : new NotNode(operand);
+			}
+			if (accept("(")) {
+				Node node = parseOr();
+				return node != null && accept(")") ? node : null;
+			}
+			return parsePath();
+		}
+
+		private Node parsePath() {
+			List<String> path = new ArrayList<String>();
+			do {
+				String identifier = position < tokens.size() ? tokens.get(position) : null;
+				if (identifier == null || !isIdentifier(identifier)) {
+					return null;
+				}
+				path.add(identifier);
+				position++;
+			} while (accept("."));
+			return new PathNode(path);
+		}
+
+		private boolean accept(String token) {
+			if (position < tokens.size() && token.equals(tokens.get(position))) {
+				position++;
+				return true;
+			}
+			return false;
+		}
+
+		private boolean isIdentifier(String token) {
+			if (!IDENTIFIER.matcher(token).matches()) {
+				return false;
+			}
+			for (String keyword : KEYWORDS) {
+				if (keyword.equals(token)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -6,60 +6,48 @@ import java.util.Date;
 
 /**
  * A very simple view of a visit, suitable for use in an app contextModel.
+ * Properties are read from the visit when they are asked for, and whether the visit is admitted, which has to look
+ * through its encounters, is only worked out once, the first time it is asked for.
  */
 public class VisitContextModel {
 
-    private int id;
-    private String uuid;
-    private boolean active;
-    private boolean admitted;
-    private Long stopDatetimeInMilliseconds;
-    private Long startDatetimeInMilliseconds;
-    private Date stopDatetime;
+    private final VisitDomainWrapper visit;
 
-    public VisitContextModel(VisitDomainWrapper visit) {
-        this.id = visit.getVisitId();
-        this.uuid = visit.getVisit().getUuid();
-        this.active = visit.isOpen();
-        this.admitted = visit.isAdmitted();
-        this.startDatetimeInMilliseconds = visit.getStartDatetime().getTime();
-
-        Date stopDatetime = visit.getStopDatetime();
-        this.stopDatetime = stopDatetime;
-
-        if(stopDatetime!=null){
-            this.stopDatetimeInMilliseconds = stopDatetime.getTime();
-        }else{
-            this.stopDatetimeInMilliseconds = null;
-        }
+    private Boolean admitted;
 
+    public VisitContextModel(VisitDomainWrapper visit) {
+        this.visit = visit;
     }
 
     public int getId() {
-        return id;
+        return visit.getVisitId();
     }
 
     public String getUuid() {
-        return uuid;
+        return visit.getVisit().getUuid();
     }
 
     public boolean isActive() {
-        return active;
+        return visit.isOpen();
     }
 
     public boolean isAdmitted() {
+        if (admitted == null) {
+            admitted = visit.isAdmitted();
+        }
         return admitted;
     }
 
     public Long getStopDatetimeInMilliseconds(){
-        return stopDatetimeInMilliseconds;
+        Date stopDatetime = visit.getStopDatetime();
+        return stopDatetime == null ? null : stopDatetime.getTime();
     }
 
     public Long getStartDatetimeInMilliseconds(){
-        return startDatetimeInMilliseconds;
+        return visit.getStartDatetime().getTime();
     }
 
     public Date getStopDatetime() {
-        return stopDatetime;
+        return visit.getStopDatetime();
     }
 }
@@ -0,0 +1,98 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.coreapps.db;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openmrs.Concept;
+import org.openmrs.Encounter;
+import org.openmrs.Obs;
+import org.openmrs.Person;
+import org.openmrs.User;
+import org.openmrs.Visit;
+
+/**
+ * Read-only queries used by the coreapps screens where going through the core services would mean
+ * lazily loading one object at a time.
+ */
+public interface CoreAppsDAO {
+
+	/**
+	 * Loads a page of the non-voided encounters of a visit, most recent first, along with their encounter types,
+	 * forms, locations and providers (including the providers' persons and names). The number of queries issued does
+	 * not depend on the number of encounters in the visit or in the page.
+	 *
+	 * @param visit the visit whose encounters to load
+	 * @param offset the number of encounters to skip
+	 * @param limit the maximum number of encounters to load, or null to load all of them from offset onwards
+	 * @return the page of encounters, most recent first (i.e. by encounter datetime, then by id, descending)
+	 */
+	List<Encounter> getEncountersWithDetails(Visit visit, int offset, Integer limit);
+
+	/**
+	 * @param visit the visit
+	 * @return the number of non-voided encounters of the visit
+	 */
+	int getEncounterCount(Visit visit);
+
+	/**
+	 * Finds, in a single query, the encounters of a visit that the given user participated in, i.e. that the user
+	 * created or in which the user's person is one of the providers.
+	 *
+	 * @param visit the visit whose encounters to consider
+	 * @param user the user
+	 * @return the ids of the encounters the user participated in
+	 */
+	Set<Integer> getEncounterIdsParticipatedIn(Visit visit, User user);
+
+	/**
+	 * Loads several encounters along with their obs (including the obs' concepts and group members) and orders. The
+	 * number of queries issued does not depend on the number of encounters or obs.
+	 *
+	 * @param encounterIds the ids of the encounters to load
+	 * @return the encounters, in no particular order
+	 */
+	List<Encounter> getEncountersWithObsAndOrders(Collection<Integer> encounterIds);
+
+	/**
+	 * Finds, in a single query, the non-voided obs of the given (non-coded diagnosis) concept whose text value is one
+	 * of the given texts, ignoring case and surrounding whitespace.
+	 *
+	 * @param concept the non-coded diagnosis concept
+	 * @param texts the free texts to look for
+	 * @return the ids of the matching obs, in ascending order
+	 */
+	List<Integer> getObsIdsWithValueTexts(Concept concept, Collection<String> texts);
+
+	/**
+	 * Counts the non-voided obs of the given (non-coded diagnosis) concept by text value, in lower case and without
+	 * surrounding whitespace, in a single query.
+	 *
+	 * @param concept the non-coded diagnosis concept
+	 * @return the number of obs by text value
+	 */
+	Map<String, Integer> getValueTextCounts(Concept concept);
+
+	/**
+	 * Finds, in a single query, the latest non-voided obs of a person for each of the given concepts.
+	 *
+	 * @param person the person
+	 * @param concepts the question concepts
+	 * @return the latest obs by concept id (concepts without obs are left out)
+	 */
+	Map<Integer, Obs> getLatestObsByConcept(Person person, Collection<Concept> concepts);
+}
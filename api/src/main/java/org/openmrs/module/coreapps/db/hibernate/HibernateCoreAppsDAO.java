@@ -0,0 +1,222 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.coreapps.db.hibernate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hibernate.Query;
+import org.openmrs.Concept;
+import org.openmrs.Encounter;
+import org.openmrs.Obs;
+import org.openmrs.Person;
+import org.openmrs.User;
+import org.openmrs.Visit;
+import org.openmrs.api.db.hibernate.DbSession;
+import org.openmrs.api.db.hibernate.DbSessionFactory;
+import org.openmrs.module.coreapps.db.CoreAppsDAO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository("coreAppsDAO")
+@Transactional(readOnly = true)
+public class HibernateCoreAppsDAO implements CoreAppsDAO {
+
+	@Autowired
+	private DbSessionFactory sessionFactory;
+
+	public void setSessionFactory(DbSessionFactory sessionFactory) {
+		this.sessionFactory = sessionFactory;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<Encounter> getEncountersWithDetails(Visit visit, int offset, Integer limit) {
+		DbSession session = sessionFactory.getCurrentSession();
+
+		// page through the ids first, since a page of a query that fetches collections would be cut out in memory
+		Query pageQuery = session.createQuery("select e.encounterId from Encounter e "
+		        + "where e.visit = :visit and e.voided = false "
+		        + "order by e.encounterDatetime desc, e.encounterId desc")
+		        .setParameter("visit", visit)
+		        .setFirstResult(offset);
+		if (limit != null) {
+			pageQuery.setMaxResults(limit);
+		}
+		List<Integer> encounterIds = pageQuery.list();
+		if (encounterIds.isEmpty()) {
+			return new ArrayList<Encounter>();
+		}
+
+		// encounters with their many-to-one associations and providers in a single round trip
+		List<Encounter> encounters = session.createQuery("select distinct e from Encounter e "
+		        + "left join fetch e.encounterType "
+		        + "left join fetch e.form "
+		        + "left join fetch e.location "
+		        + "left join fetch e.encounterProviders ep "
+		        + "left join fetch ep.provider p "
+		        + "left join fetch p.person "
+		        + "left join fetch ep.encounterRole "
+		        + "where e.encounterId in (:encounterIds)")
+		        .setParameterList("encounterIds", encounterIds)
+		        .list();
+
+		// the names of the providers' persons, which are needed to display the providers
+		session.createQuery("select distinct person from Person person "
+		        + "left join fetch person.names "
+		        + "where person in (select ep.provider.person from EncounterProvider ep "
+		        + "where ep.encounter.encounterId in (:encounterIds))")
+		        .setParameterList("encounterIds", encounterIds)
+		        .list();
+
+		Map<Integer, Encounter> encountersById = new HashMap<Integer, Encounter>();
+		for (Encounter encounter : encounters) {
+			encountersById.put(encounter.getEncounterId(), encounter);
+		}
+		List<Encounter> page = new ArrayList<Encounter>(encounterIds.size());
+		for (Integer encounterId : encounterIds) {
+			page.add(encountersById.get(encounterId));
+		}
+		return page;
+	}
+
+	@Override
+	public int getEncounterCount(Visit visit) {
+		Number count = (Number) sessionFactory.getCurrentSession().createQuery("select count(e) from Encounter e "
+		        + "where e.visit = :visit and e.voided = false")
+		        .setParameter("visit", visit)
+		        .uniqueResult();
+		return count.intValue();
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public Set<Integer> getEncounterIdsParticipatedIn(Visit visit, User user) {
+		Query query;
+		if (user.getPerson() == null) {
+			query = sessionFactory.getCurrentSession().createQuery("select e.encounterId from Encounter e "
+			        + "where e.visit = :visit and e.creator = :user");
+		} else {
+			query = sessionFactory.getCurrentSession().createQuery("select distinct e.encounterId from Encounter e "
+			        + "left join e.encounterProviders ep "
+			        + "left join ep.provider p "
+			        + "where e.visit = :visit and (e.creator = :user or p.person = :person)")
+			        .setParameter("person", user.getPerson());
+		}
+		query.setParameter("visit", visit).setParameter("user", user);
+
+		return new HashSet<Integer>((List<Integer>) query.list());
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<Encounter> getEncountersWithObsAndOrders(Collection<Integer> encounterIds) {
+		if (encounterIds.isEmpty()) {
+			return new ArrayList<Encounter>();
+		}
+		DbSession session = sessionFactory.getCurrentSession();
+
+		List<Encounter> encounters = session.createQuery("select distinct e from Encounter e "
+		        + "left join fetch e.obs o "
+		        + "left join fetch o.concept "
+		        + "where e.encounterId in (:encounterIds)")
+		        .setParameterList("encounterIds", encounterIds)
+		        .list();
+
+		if (!encounters.isEmpty()) {
+			// obs groups, fetched separately to avoid a cartesian product with the obs themselves
+			session.createQuery("select distinct o from Obs o "
+			        + "left join fetch o.groupMembers "
+			        + "where o.encounter.encounterId in (:encounterIds)")
+			        .setParameterList("encounterIds", encounterIds)
+			        .list();
+
+			session.createQuery("select distinct e from Encounter e "
+			        + "left join fetch e.orders "
+			        + "where e.encounterId in (:encounterIds)")
+			        .setParameterList("encounterIds", encounterIds)
+			        .list();
+		}
+
+		return encounters;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<Integer> getObsIdsWithValueTexts(Concept concept, Collection<String> texts) {
+		if (texts.isEmpty()) {
+			return new ArrayList<Integer>();
+		}
+
+		Set<String> normalizedTexts = new HashSet<String>();
+		for (String text : texts) {
+			normalizedTexts.add(text.trim().toLowerCase());
+		}
+		return sessionFactory.getCurrentSession().createQuery("select o.obsId from Obs o "
+		        + "where o.concept = :concept and o.voided = false and lower(trim(o.valueText)) in (:texts) "
+		        + "order by o.obsId")
+		        .setParameter("concept", concept)
+		        .setParameterList("texts", normalizedTexts)
+		        .list();
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public Map<String, Integer> getValueTextCounts(Concept concept) {
+		List<Object[]> rows = sessionFactory.getCurrentSession().createQuery("select lower(trim(o.valueText)), count(o) "
+		        + "from Obs o "
+		        + "where o.concept = :concept and o.voided = false and o.valueText is not null "
+		        + "group by lower(trim(o.valueText))")
+		        .setParameter("concept", concept)
+		        .list();
+
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (Object[] row : rows) {
+			counts.put((String) row[0], ((Number) row[1]).intValue());
+		}
+		return counts;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public Map<Integer, Obs> getLatestObsByConcept(Person person, Collection<Concept> concepts) {
+		Map<Integer, Obs> latestObs = new HashMap<Integer, Obs>();
+		if (concepts.isEmpty()) {
+			return latestObs;
+		}
+
+		// only the obs at the latest date of each concept, most recent first in case of ties
+		List<Obs> obs = sessionFactory.getCurrentSession().createQuery("select o from Obs o "
+		        + "where o.person = :person and o.voided = false and o.concept in (:concepts) "
+		        + "and o.obsDatetime = (select max(latest.obsDatetime) from Obs latest "
+		        + "where latest.person = :person and latest.voided = false and latest.concept = o.concept) "
+		        + "order by o.obsId desc")
+		        .setParameter("person", person)
+		        .setParameterList("concepts", concepts)
+		        .list();
+
+		for (Obs o : obs) {
+			if (!latestObs.containsKey(o.getConcept().getConceptId())) {
+				latestObs.put(o.getConcept().getConceptId(), o);
+			}
+		}
+		return latestObs;
+	}
+}
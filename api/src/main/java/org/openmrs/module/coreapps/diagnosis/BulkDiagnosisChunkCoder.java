@@ -0,0 +1,117 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.coreapps.diagnosis;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.openmrs.ConceptName;
+import org.openmrs.Obs;
+import org.openmrs.api.ConceptService;
+import org.openmrs.api.ObsService;
+import org.openmrs.module.emrapi.diagnosis.CodedOrFreeTextAnswer;
+import org.openmrs.module.emrapi.diagnosis.Diagnosis;
+import org.openmrs.module.emrapi.diagnosis.DiagnosisService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Codes one chunk of a {@link BulkDiagnosisCoder} job in a transaction of its own. This is a bean of its own so that
+ * the calls from the {@link BulkDiagnosisCoder} go through the transaction proxy.
+ */
+@Component("coreapps.bulkDiagnosisChunkCoder")
+public class BulkDiagnosisChunkCoder {
+
+	/**
+	 * What happened to a non-coded diagnosis obs
+	 */
+	public enum Outcome {
+		CODED, SKIPPED, NOT_CODED
+	}
+
+	@Autowired
+	@Qualifier("obsService")
+	private ObsService obsService;
+
+	@Autowired
+	@Qualifier("conceptService")
+	private ConceptService conceptService;
+
+	@Autowired
+	@Qualifier("diagnosisService")
+	private DiagnosisService diagnosisService;
+
+	public void setObsService(ObsService obsService) {
+		this.obsService = obsService;
+	}
+
+	public void setConceptService(ConceptService conceptService) {
+		this.conceptService = conceptService;
+	}
+
+	public void setDiagnosisService(DiagnosisService diagnosisService) {
+		this.diagnosisService = diagnosisService;
+	}
+
+	/**
+	 * Codes the given obs in one transaction, so if coding any of them fails, none of them are coded. The concepts
+	 * of the diagnoses are loaded again in this transaction, since those in mappings may come from another session.
+	 *
+	 * @param obsIds the ids of the non-coded diagnosis obs to code
+	 * @param mappings the diagnoses to code each non-coded diagnosis obs with, by obs id
+	 * @return the outcome for each of obsIds, in the same order
+	 */
+	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	public List<Outcome> codeChunk(Collection<Integer> obsIds, Map<Integer, List<Diagnosis>> mappings) {
+		List<Outcome> outcomes = new ArrayList<Outcome>(obsIds.size());
+		for (Integer obsId : obsIds) {
+			Obs nonCodedObs = obsService.getObs(obsId);
+			if (nonCodedObs == null || nonCodedObs.isVoided()) {
+				outcomes.add(Outcome.SKIPPED);
+				continue;
+			}
+
+			List<Diagnosis> diagnoses = new ArrayList<Diagnosis>();
+			for (Diagnosis diagnosis : mappings.get(obsId)) {
+				diagnoses.add(reload(diagnosis));
+			}
+			List<Obs> newDiagnoses = diagnosisService.codeNonCodedDiagnosis(nonCodedObs, diagnoses);
+			outcomes.add(newDiagnoses != null && newDiagnoses.size() > 0 ? Outcome.CODED : Outcome.NOT_CODED);
+		}
+		return outcomes;
+	}
+
+	private Diagnosis reload(Diagnosis diagnosis) {
+		CodedOrFreeTextAnswer answer = diagnosis.getDiagnosis();
+		// only the ids are read from the given concepts, which does not need their session
+		ConceptName specificCodedAnswer = answer.getSpecificCodedAnswer();
+		CodedOrFreeTextAnswer reloaded;
+		if (specificCodedAnswer != null) {
+			reloaded = new CodedOrFreeTextAnswer(conceptService.getConceptName(specificCodedAnswer.getId()));
+		} else if (answer.getCodedAnswer() != null) {
+			reloaded = new CodedOrFreeTextAnswer(conceptService.getConcept(answer.getCodedAnswer().getId()));
+		} else {
+			reloaded = new CodedOrFreeTextAnswer(answer.getNonCodedAnswer());
+		}
+
+		Diagnosis copy = new Diagnosis(reloaded, diagnosis.getOrder());
+		copy.setCertainty(diagnosis.getCertainty());
+		return copy;
+	}
+}
@@ -0,0 +1,299 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.coreapps.diagnosis;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Concept;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
+import org.openmrs.api.db.hibernate.DbSessionFactory;
+import org.openmrs.module.coreapps.cache.LruCache;
+import org.openmrs.module.coreapps.db.CoreAppsDAO;
+import org.openmrs.module.emrapi.EmrApiProperties;
+import org.openmrs.module.emrapi.diagnosis.Diagnosis;
+import org.openmrs.module.emrapi.diagnosis.DiagnosisService;
+import org.openmrs.ui.framework.SimpleObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+/**
+ * Codes many non-coded diagnoses in one go, through {@link DiagnosisService#codeNonCodedDiagnosis}. The jobs run in
+ * the background, one at a time, each in a session of its own. The obs of a job are coded {@link #CHUNK_SIZE} at a
+ * time, each chunk in one transaction (see {@link BulkDiagnosisChunkCoder}). If a chunk fails, its obs are coded again
+ * one at a time, so one obs that cannot be coded does not stop the others from being coded.
+ * <p/>
+ * The progress of the jobs is kept by job id (for the last {@link #MAX_JOBS} jobs), so that a page can poll it while
+ * a job is running.
+ */
+@Component("coreapps.bulkDiagnosisCoder")
+public class BulkDiagnosisCoder {
+
+	public static final int CHUNK_SIZE = 50;
+
+	public static final int MAX_JOBS = 100;
+
+	private final Log log = LogFactory.getLog(getClass());
+
+	@Autowired
+	@Qualifier("emrApiProperties")
+	private EmrApiProperties emrApiProperties;
+
+	@Autowired
+	private CoreAppsDAO coreAppsDAO;
+
+	@Autowired
+	private BulkDiagnosisChunkCoder chunkCoder;
+
+	@Autowired
+	private DbSessionFactory sessionFactory;
+
+	@Autowired
+	@Qualifier("coreapps.nonCodedDiagnosisMatcher")
+	private NonCodedDiagnosisMatcher nonCodedDiagnosisMatcher;
+
+	private final LruCache<String, Progress> jobs = new LruCache<String, Progress>(MAX_JOBS);
+
+	private ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "coreapps-bulk-diagnosis-coder");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	public void setEmrApiProperties(EmrApiProperties emrApiProperties) {
+		this.emrApiProperties = emrApiProperties;
+	}
+
+	public void setCoreAppsDAO(CoreAppsDAO coreAppsDAO) {
+		this.coreAppsDAO = coreAppsDAO;
+	}
+
+	public void setChunkCoder(BulkDiagnosisChunkCoder chunkCoder) {
+		this.chunkCoder = chunkCoder;
+	}
+
+	public void setSessionFactory(DbSessionFactory sessionFactory) {
+		this.sessionFactory = sessionFactory;
+	}
+
+	public void setNonCodedDiagnosisMatcher(NonCodedDiagnosisMatcher nonCodedDiagnosisMatcher) {
+		this.nonCodedDiagnosisMatcher = nonCodedDiagnosisMatcher;
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Starts coding every non-voided non-coded diagnosis whose text is one of the given ones (ignoring case and
+	 * surrounding whitespace) with the same diagnoses.
+	 *
+	 * @param jobId the id to report the progress under
+	 * @param nonCodedTexts the free texts of the non-coded diagnoses to code, e.g. those of a
+	 *            {@link NonCodedDiagnosisCluster}
+	 * @param diagnoses what to code them as
+	 * @return the progress of the job, which goes on after this returns
+	 */
+	public Progress codeAll(String jobId, Collection<String> nonCodedTexts, List<Diagnosis> diagnoses) {
+		return code(jobId, getMappings(nonCodedTexts, diagnoses));
+	}
+
+	/**
+	 * @return the given diagnoses by the id of each non-voided non-coded diagnosis obs with one of the given texts
+	 */
+	Map<Integer, List<Diagnosis>> getMappings(Collection<String> nonCodedTexts, List<Diagnosis> diagnoses) {
+		Concept nonCodedConcept = emrApiProperties.getDiagnosisMetadata().getNonCodedDiagnosisConcept();
+
+		Map<Integer, List<Diagnosis>> mappings = new LinkedHashMap<Integer, List<Diagnosis>>();
+		for (Integer obsId : coreAppsDAO.getObsIdsWithValueTexts(nonCodedConcept, nonCodedTexts)) {
+			mappings.put(obsId, diagnoses);
+		}
+		return mappings;
+	}
+
+	/**
+	 * Starts coding the given non-coded diagnoses.
+	 *
+	 * @param jobId the id to report the progress under
+	 * @param mappings the diagnoses to code each non-coded diagnosis obs with, by obs id
+	 * @return the progress of the job, which goes on after this returns
+	 */
+	public Progress code(String jobId, final Map<Integer, List<Diagnosis>> mappings) {
+		final Progress progress = new Progress(jobId, mappings.size());
+		jobs.put(jobId, progress);
+
+		final UserContext userContext = Context.getUserContext();
+		executor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				Context.openSession();
+				try {
+					Context.setUserContext(userContext);
+					runJob(progress, mappings);
+				}
+				catch (Exception e) {
+					log.error("Failed to run bulk diagnosis coding job " + progress.getJobId(), e);
+					progress.finished = true;
+				}
+				finally {
+					Context.closeSession();
+				}
+			}
+		});
+		return progress;
+	}
+
+	/**
+	 * Runs a job in the current thread, whose session is only used by the job. The non-coded diagnosis clusters are
+	 * dropped once the job is over, whether or not it completed, since some of their obs may have been coded.
+	 */
+	void runJob(Progress progress, Map<Integer, List<Diagnosis>> mappings) {
+		try {
+			List<Integer> chunk = new ArrayList<Integer>(CHUNK_SIZE);
+			for (Integer obsId : mappings.keySet()) {
+				chunk.add(obsId);
+				if (chunk.size() == CHUNK_SIZE) {
+					codeChunk(chunk, mappings, progress);
+					chunk.clear();
+				}
+			}
+			if (chunk.size() > 0) {
+				codeChunk(chunk, mappings, progress);
+			}
+		}
+		finally {
+			nonCodedDiagnosisMatcher.invalidate();
+		}
+		progress.finished = true;
+	}
+
+	private void codeChunk(List<Integer> obsIds, Map<Integer, List<Diagnosis>> mappings, Progress progress) {
+		try {
+			for (BulkDiagnosisChunkCoder.Outcome outcome : chunkCoder.codeChunk(obsIds, mappings)) {
+				if (outcome == BulkDiagnosisChunkCoder.Outcome.CODED) {
+					progress.coded++;
+				} else if (outcome == BulkDiagnosisChunkCoder.Outcome.SKIPPED) {
+					progress.skipped++;
+				} else {
+					progress.failed++;
+				}
+				progress.processed++;
+			}
+		}
+		catch (Exception e) {
+			if (obsIds.size() == 1) {
+				log.warn("Failed to code non-coded diagnosis obs " + obsIds.get(0), e);
+				progress.failed++;
+				progress.processed++;
+			} else {
+				// the whole chunk was rolled back, code its obs one by one to find those that fail
+				for (Integer obsId : obsIds) {
+					codeChunk(Collections.singletonList(obsId), mappings, progress);
+				}
+			}
+		}
+		finally {
+			// the job has its own session, so nothing else uses what was loaded for this chunk
+			sessionFactory.getCurrentSession().clear();
+		}
+	}
+
+	/**
+	 * @param jobId the job id
+	 * @return the progress of the job, or null if there is no such (recent) job
+	 */
+	public Progress getProgress(String jobId) {
+		return jobs.get(jobId);
+	}
+
+	/**
+	 * The progress of a job. It is only updated by the thread running the job, and may be read from any other.
+	 */
+	public static class Progress {
+
+		private final String jobId;
+
+		private final int total;
+
+		private volatile int processed;
+
+		private volatile int coded;
+
+		private volatile int skipped;
+
+		private volatile int failed;
+
+		private volatile boolean finished;
+
+		public Progress(String jobId, int total) {
+			this.jobId = jobId;
+			this.total = total;
+		}
+
+		public String getJobId() {
+			return jobId;
+		}
+
+		public int getTotal() {
+			return total;
+		}
+
+		public int getProcessed() {
+			return processed;
+		}
+
+		public int getCoded() {
+			return coded;
+		}
+
+		/**
+		 * @return the number of obs that had been voided (e.g. already coded) or deleted
+		 */
+		public int getSkipped() {
+			return skipped;
+		}
+
+		public int getFailed() {
+			return failed;
+		}
+
+		public boolean isFinished() {
+			return finished;
+		}
+
+		public SimpleObject toSimpleObject() {
+			return SimpleObject.create("jobId", jobId, "total", total, "processed", processed, "coded", coded,
+			    "skipped", skipped, "failed", failed, "finished", finished);
+		}
+	}
+}
@@ -0,0 +1,149 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.coreapps.diagnosis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.Concept;
+import org.openmrs.ConceptMap;
+import org.openmrs.ConceptName;
+import org.openmrs.ConceptReferenceTerm;
+import org.openmrs.ConceptSearchResult;
+import org.openmrs.module.coreapps.cache.LruCache;
+import org.openmrs.ui.framework.SimpleObject;
+import org.openmrs.ui.framework.UiUtils;
+import org.springframework.stereotype.Component;
+
+/**
+ * Converts diagnosis search results into the simple objects expected by the diagnosis widgets, i.e.
+ * <pre>
+ * { word, conceptName: { id, uuid, conceptNameType, name },
+ *   concept: { id, uuid, preferredName,
+ *              conceptMappings: [ { conceptMapType, conceptReferenceTerm: { code, name, conceptSource: { name } } } ] } }
+ * </pre>
+ * The values are read straight from the result rather than by introspection, and the mappings of each concept (which
+ * rarely change, but are the bulk of the work) are only converted once per locale by each serializer. The mappings
+ * cached by the shared bean are evicted by {@link DiagnosisSearchInvalidationAdvice} when a concept, reference term,
+ * map type or concept source is changed.
+ */
+@Component("coreapps.conceptSearchResultSerializer")
+public class ConceptSearchResultSerializer {
+
+	private static final int MAX_CACHED_CONCEPTS = 5000;
+
+	private final LruCache<Integer, Map<Locale, List<SimpleObject>>> mappingsByConcept = new LruCache<Integer, Map<Locale, List<SimpleObject>>>(
+	        MAX_CACHED_CONCEPTS);
+
+	public SimpleObject simplify(ConceptSearchResult result, UiUtils ui, Locale locale) {
+		SimpleObject simple = new SimpleObject();
+		simple.put("word", result.getWord());
+
+		ConceptName conceptName = result.getConceptName();
+		if (conceptName == null) {
+			simple.put("conceptName", null);
+		} else {
+			SimpleObject simpleName = new SimpleObject();
+			simpleName.put("id", conceptName.getId());
+			simpleName.put("uuid", conceptName.getUuid());
+			simpleName.put("conceptNameType", conceptName.getConceptNameType());
+			simpleName.put("name", conceptName.getName());
+			simple.put("conceptName", simpleName);
+		}
+
+		Concept concept = result.getConcept();
+		if (concept == null) {
+			simple.put("concept", null);
+		} else {
+			SimpleObject simpleConcept = new SimpleObject();
+			simpleConcept.put("id", concept.getId());
+			simpleConcept.put("uuid", concept.getUuid());
+			simpleConcept.put("conceptMappings", getMappings(concept, ui, locale));
+			simpleConcept.put("preferredName", getPreferredName(locale, concept).getName());
+			simple.put("concept", simpleConcept);
+		}
+		return simple;
+	}
+
+	/**
+	 * Evicts the cached mappings of a concept
+	 */
+	public void conceptChanged(Integer conceptId) {
+		mappingsByConcept.remove(conceptId);
+	}
+
+	/**
+	 * Evicts the cached mappings of all concepts
+	 */
+	public void clear() {
+		mappingsByConcept.clear();
+	}
+
+	private List<SimpleObject> getMappings(Concept concept, UiUtils ui, Locale locale) {
+		if (concept.getConceptId() == null) {
+			return convertMappings(concept, ui);
+		}
+
+		Map<Locale, List<SimpleObject>> byLocale = mappingsByConcept.get(concept.getConceptId());
+		if (byLocale == null) {
+			byLocale = new ConcurrentHashMap<Locale, List<SimpleObject>>();
+			mappingsByConcept.put(concept.getConceptId(), byLocale);
+		}
+
+		List<SimpleObject> mappings = byLocale.get(locale);
+		if (mappings == null) {
+			mappings = Collections.unmodifiableList(convertMappings(concept, ui));
+			byLocale.put(locale, mappings);
+		}
+		return mappings;
+	}
+
+	private static List<SimpleObject> convertMappings(Concept concept, UiUtils ui) {
+		List<SimpleObject> mappings = new ArrayList<SimpleObject>();
+		for (ConceptMap mapping : concept.getConceptMappings()) {
+			SimpleObject simpleMapping = new SimpleObject();
+			simpleMapping.put("conceptMapType", ui.format(mapping.getConceptMapType()));
+
+			ConceptReferenceTerm term = mapping.getConceptReferenceTerm();
+			if (term == null) {
+				simpleMapping.put("conceptReferenceTerm", null);
+			} else {
+				SimpleObject simpleTerm = new SimpleObject();
+				simpleTerm.put("code", term.getCode());
+				simpleTerm.put("name", term.getName());
+				simpleTerm.put("conceptSource", term.getConceptSource() == null ? null : SimpleObject.create("name",
+				    term.getConceptSource().getName()));
+				simpleMapping.put("conceptReferenceTerm", simpleTerm);
+			}
+			mappings.add(simpleMapping);
+		}
+		return mappings;
+	}
+
+	private static ConceptName getPreferredName(Locale locale, Concept concept) {
+		ConceptName name = concept.getPreferredName(locale);
+		if (name == null && (StringUtils.isNotEmpty(locale.getCountry()) || StringUtils.isNotEmpty(locale.getVariant()))) {
+			name = concept.getPreferredName(new Locale(locale.getLanguage()));
+		}
+		if (name == null) {
+			name = concept.getName(locale);
+		}
+		return name;
+	}
+}
@@ -0,0 +1,45 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.coreapps.diagnosis;
+
+import org.openmrs.ConceptSearchResult;
+
+/**
+ * A coded diagnosis that a free text diagnosis may have meant, with how similar its name is to the free text.
+ */
+public class DiagnosisCandidate {
+
+	private final ConceptSearchResult result;
+
+	private final double similarity;
+
+	public DiagnosisCandidate(ConceptSearchResult result, double similarity) {
+		this.result = result;
+		this.similarity = similarity;
+	}
+
+	/**
+	 * @return the concept and its name that is most similar to the free text
+	 */
+	public ConceptSearchResult getResult() {
+		return result;
+	}
+
+	/**
+	 * @return from 0 (nothing in common) to 1 (the same words, allowing for punctuation and case)
+	 */
+	public double getSimilarity() {
+		return similarity;
+	}
+}
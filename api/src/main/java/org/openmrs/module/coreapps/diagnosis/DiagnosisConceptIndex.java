@@ -0,0 +1,606 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.coreapps.diagnosis;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Concept;
+import org.openmrs.ConceptMap;
+import org.openmrs.ConceptName;
+import org.openmrs.ConceptNameType;
+import org.openmrs.ConceptSearchResult;
+import org.openmrs.ConceptSource;
+import org.openmrs.api.ConceptService;
+import org.openmrs.module.emrapi.concept.EmrConceptService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+/**
+ * An in-memory index of the names and reference term codes of the concepts in the diagnosis sets, used to search for
+ * diagnoses without going to the database for every keystroke of the diagnosis autocomplete.
+ * <p/>
+ * Like {@link EmrConceptService#conceptSearch}, a concept matches if one of the reference terms it is mapped to (in
+ * one of the given sources) has the query as its code, or if every word of the query is the start of a word of one of
+ * its names. The index only holds ids, names and codes; the matching concepts are loaded through the ConceptService.
+ * <p/>
+ * The index is built for a given set of diagnosis sets and concept sources, and is rebuilt if it is searched with
+ * different ones. Changed concepts are re-indexed individually by {@link DiagnosisSearchInvalidationAdvice}.
+ * <p/>
+ * The names are also indexed by their {@link FuzzyKeys} (trigrams and Soundex codes), to find the diagnoses that a
+ * misspelled free text diagnosis may have meant.
+ */
+@Component("coreapps.diagnosisConceptIndex")
+public class DiagnosisConceptIndex {
+
+	// how similar (see FuzzyKeys#similarity) a name must be to a free text to be a candidate for it
+	static final double MIN_SIMILARITY = 0.4;
+
+	private final Log log = LogFactory.getLog(getClass());
+
+	@Autowired
+	@Qualifier("conceptService")
+	private ConceptService conceptService;
+
+	@Autowired
+	@Qualifier("emrConceptService")
+	private EmrConceptService emrConceptService;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	// what the index was built for, null if it has not been built (or needs to be rebuilt)
+	private Set<Integer> indexedSetIds;
+
+	private Set<Integer> indexedSourceIds;
+
+	// the members of the indexed sets, including the retired ones, which are indexed again when unretired
+	private Set<Integer> memberIds;
+
+	private Map<Integer, List<IndexedName>> namesByConcept;
+
+	private TreeMap<String, Set<IndexedName>> namesByWord;
+
+	private Map<Integer, Set<String>> codesByConcept;
+
+	private Map<String, Set<Integer>> conceptsByCode;
+
+	private Map<String, Set<IndexedName>> namesByFuzzyKey;
+
+	public void setConceptService(ConceptService conceptService) {
+		this.conceptService = conceptService;
+	}
+
+	public void setEmrConceptService(EmrConceptService emrConceptService) {
+		this.emrConceptService = emrConceptService;
+	}
+
+	/**
+	 * Searches the concepts of the given diagnosis sets, building (or rebuilding) the index first if needed. If there
+	 * are no diagnosis sets, the search is done by the {@link EmrConceptService} over all concepts.
+	 *
+	 * @return the matching concepts, with the name that matched best (or no name if a code matched), best matches
+	 *         first
+	 */
+	public List<ConceptSearchResult> search(String query, Locale locale, Collection<Concept> diagnosisSets,
+	                                        Collection<ConceptSource> sources) {
+		return search(query, locale, diagnosisSets, sources, 0, Integer.MAX_VALUE).getResults();
+	}
+
+	/**
+	 * Same as {@link #search(String, Locale, Collection, Collection)}, but only the concepts in the requested window
+	 * of the results are loaded.
+	 *
+	 * @param start the index of the first result to return
+	 * @param size the maximum number of results to return
+	 */
+	public DiagnosisSearchResults search(String query, Locale locale, Collection<Concept> diagnosisSets,
+	                                     Collection<ConceptSource> sources, int start, int size) {
+		return search(query, locale, diagnosisSets, sources, start, size, false);
+	}
+
+	/**
+	 * Same as {@link #search(String, Locale, Collection, Collection, int, int)}, but if fuzzy is true, the concepts
+	 * with names similar to the query (see {@link #findCandidates}) are added after the ones that match it, most similar
+	 * first. Fuzzy matching is only done when there are diagnosis sets.
+	 */
+	public DiagnosisSearchResults search(String query, Locale locale, Collection<Concept> diagnosisSets,
+	                                     Collection<ConceptSource> sources, int start, int size, boolean fuzzy) {
+		start = Math.max(start, 0);
+		size = Math.max(size, 0);
+
+		if (diagnosisSets == null || diagnosisSets.isEmpty()) {
+			// fetch one more than needed, to know whether there are more
+			int limit = (int) Math.min((long) start + size + 1, Integer.MAX_VALUE);
+			List<ConceptSearchResult> hits = emrConceptService.conceptSearch(query, locale, null, diagnosisSets, sources,
+			    limit);
+			int from = Math.min(start, hits.size());
+			int to = (int) Math.min((long) from + size, hits.size());
+			return new DiagnosisSearchResults(new ArrayList<ConceptSearchResult>(hits.subList(from, to)), null,
+			        to < hits.size());
+		}
+		ensureIndexed(diagnosisSets, sources);
+
+		List<Integer> conceptIds = new ArrayList<Integer>();
+		Map<Integer, Integer> conceptNameIds = new HashMap<Integer, Integer>();
+
+		lock.readLock().lock();
+		try {
+			for (Integer conceptId : getConceptIdsByCode(query)) {
+				conceptIds.add(conceptId);
+				conceptNameIds.put(conceptId, null);
+			}
+			for (IndexedName name : getBestNameMatches(query, locale)) {
+				if (!conceptNameIds.containsKey(name.conceptId)) {
+					conceptIds.add(name.conceptId);
+					conceptNameIds.put(name.conceptId, name.conceptNameId);
+				}
+			}
+			if (fuzzy) {
+				for (ScoredName match : getFuzzyNameMatches(query, locale)) {
+					if (!conceptNameIds.containsKey(match.name.conceptId)) {
+						conceptIds.add(match.name.conceptId);
+						conceptNameIds.put(match.name.conceptId, match.name.conceptNameId);
+					}
+				}
+			}
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+
+		// matches are ranked in memory, only the concepts of the requested page are loaded
+		int from = Math.min(start, conceptIds.size());
+		int to = (int) Math.min((long) from + size, conceptIds.size());
+
+		List<ConceptSearchResult> results = new ArrayList<ConceptSearchResult>();
+		for (Integer conceptId : conceptIds.subList(from, to)) {
+			Concept concept = conceptService.getConcept(conceptId);
+			if (concept != null) {
+				results.add(new ConceptSearchResult(null, concept, getName(concept, conceptNameIds.get(conceptId))));
+			}
+		}
+		return new DiagnosisSearchResults(results, conceptIds.size(), to < conceptIds.size());
+	}
+
+	/**
+	 * Finds the diagnoses whose names are most similar to a free text diagnosis, allowing for misspellings, building
+	 * (or rebuilding) the index first if needed.
+	 *
+	 * @param text the free text
+	 * @param max the maximum number of candidates to return
+	 * @return the candidates, most similar first, or nothing if there are no diagnosis sets
+	 */
+	public List<DiagnosisCandidate> findCandidates(String text, Locale locale, Collection<Concept> diagnosisSets,
+	                                               Collection<ConceptSource> sources, int max) {
+		List<DiagnosisCandidate> candidates = new ArrayList<DiagnosisCandidate>();
+		if (diagnosisSets == null || diagnosisSets.isEmpty()) {
+			return candidates;
+		}
+		ensureIndexed(diagnosisSets, sources);
+
+		List<ScoredName> matches;
+		lock.readLock().lock();
+		try {
+			matches = getFuzzyNameMatches(text, locale);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+
+		for (ScoredName match : matches) {
+			if (candidates.size() >= max) {
+				break;
+			}
+			Concept concept = conceptService.getConcept(match.name.conceptId);
+			if (concept != null) {
+				candidates.add(new DiagnosisCandidate(new ConceptSearchResult(null, concept, getName(concept,
+				    match.name.conceptNameId)), match.similarity));
+			}
+		}
+		return candidates;
+	}
+
+	/**
+	 * (Re)builds the index for the given diagnosis sets and sources.
+	 */
+	public void rebuild(Collection<Concept> diagnosisSets, Collection<ConceptSource> sources) {
+		Map<Integer, List<IndexedName>> namesByConcept = new HashMap<Integer, List<IndexedName>>();
+		Map<Integer, Set<String>> codesByConcept = new HashMap<Integer, Set<String>>();
+		Set<Integer> memberIds = new HashSet<Integer>();
+		Set<Integer> sourceIds = getIds(sources);
+
+		for (Concept diagnosisSet : diagnosisSets) {
+			for (Concept concept : diagnosisSet.getSetMembers()) {
+				memberIds.add(concept.getConceptId());
+				if (!concept.isRetired() && !namesByConcept.containsKey(concept.getConceptId())) {
+					namesByConcept.put(concept.getConceptId(), getIndexedNames(concept));
+					codesByConcept.put(concept.getConceptId(), getCodes(concept, sourceIds));
+				}
+			}
+		}
+
+		lock.writeLock().lock();
+		try {
+			this.namesByConcept = namesByConcept;
+			this.codesByConcept = codesByConcept;
+			this.memberIds = memberIds;
+			this.namesByWord = new TreeMap<String, Set<IndexedName>>();
+			this.conceptsByCode = new HashMap<String, Set<Integer>>();
+			this.namesByFuzzyKey = new HashMap<String, Set<IndexedName>>();
+			for (Integer conceptId : namesByConcept.keySet()) {
+				addToLookups(conceptId);
+			}
+			this.indexedSetIds = getIds(diagnosisSets);
+			this.indexedSourceIds = sourceIds;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+		log.info("Indexed " + namesByConcept.size() + " diagnosis concepts");
+	}
+
+	/**
+	 * Updates the index after a concept was saved, retired or purged. If the concept is one of the diagnosis sets,
+	 * its members may have changed, so the whole index will be rebuilt on the next search. A member of the diagnosis
+	 * sets that was retired is indexed again once it is unretired.
+	 */
+	public void conceptChanged(Concept concept, boolean purged) {
+		Integer conceptId = concept.getConceptId();
+
+		lock.writeLock().lock();
+		try {
+			if (indexedSetIds == null || conceptId == null) {
+				return;
+			}
+			if (indexedSetIds.contains(conceptId)) {
+				indexedSetIds = null;
+			} else if (namesByConcept.containsKey(conceptId)) {
+				removeFromLookups(conceptId);
+				if (purged || concept.isRetired()) {
+					namesByConcept.remove(conceptId);
+					codesByConcept.remove(conceptId);
+				} else {
+					namesByConcept.put(conceptId, getIndexedNames(concept));
+					codesByConcept.put(conceptId, getCodes(concept, indexedSourceIds));
+					addToLookups(conceptId);
+				}
+			} else if (memberIds.contains(conceptId) && !purged && !concept.isRetired()) {
+				namesByConcept.put(conceptId, getIndexedNames(concept));
+				codesByConcept.put(conceptId, getCodes(concept, indexedSourceIds));
+				addToLookups(conceptId);
+			}
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * The whole index will be rebuilt on the next search (e.g. after a reference term code changed).
+	 */
+	public void invalidate() {
+		lock.writeLock().lock();
+		try {
+			indexedSetIds = null;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void ensureIndexed(Collection<Concept> diagnosisSets, Collection<ConceptSource> sources) {
+		lock.readLock().lock();
+		try {
+			if (getIds(diagnosisSets).equals(indexedSetIds) && getIds(sources).equals(indexedSourceIds)) {
+				return;
+			}
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+		rebuild(diagnosisSets, sources);
+	}
+
+	private Set<Integer> getConceptIdsByCode(String query) {
+		Set<Integer> conceptIds = conceptsByCode.get(query.trim().toLowerCase());
+		return conceptIds == null ? Collections.<Integer> emptySet() : conceptIds;
+	}
+
+	/**
+	 * @return the best matching name of each matching concept, best matches first
+	 */
+	private List<IndexedName> getBestNameMatches(String query, Locale locale) {
+		final String normalizedQuery = normalize(query);
+		String[] words = StringUtils.split(normalizedQuery, ' ');
+		if (words.length == 0) {
+			return Collections.emptyList();
+		}
+
+		Set<IndexedName> candidates = null;
+		for (String word : words) {
+			Set<IndexedName> matching = new HashSet<IndexedName>();
+			for (Set<IndexedName> names : namesByWord.subMap(word, true, word + Character.MAX_VALUE, false).values()) {
+				matching.addAll(names);
+			}
+			if (candidates == null) {
+				candidates = matching;
+			} else {
+				candidates.retainAll(matching);
+			}
+			if (candidates.isEmpty()) {
+				return Collections.emptyList();
+			}
+		}
+
+		Locale languageOnly = new Locale(locale.getLanguage());
+		Comparator<IndexedName> ranking = new Comparator<IndexedName>() {
+
+			@Override
+			public int compare(IndexedName left, IndexedName right) {
+				int result = left.rank(normalizedQuery) - right.rank(normalizedQuery);
+				if (result == 0) {
+					result = left.normalizedName.length() - right.normalizedName.length();
+				}
+				if (result == 0) {
+					result = left.normalizedName.compareTo(right.normalizedName);
+				}
+				return result != 0 ? result : left.conceptNameId - right.conceptNameId;
+			}
+		};
+
+		Map<Integer, IndexedName> bestByConcept = new LinkedHashMap<Integer, IndexedName>();
+		for (IndexedName name : candidates) {
+			if (name.locale.equals(locale) || name.locale.equals(languageOnly)) {
+				IndexedName best = bestByConcept.get(name.conceptId);
+				if (best == null || ranking.compare(name, best) < 0) {
+					bestByConcept.put(name.conceptId, name);
+				}
+			}
+		}
+
+		List<IndexedName> matches = new ArrayList<IndexedName>(bestByConcept.values());
+		Collections.sort(matches, ranking);
+		return matches;
+	}
+
+	/**
+	 * @return the most similar name of each concept with a name similar enough to the query, most similar first
+	 */
+	private List<ScoredName> getFuzzyNameMatches(String query, Locale locale) {
+		Set<String> queryKeys = FuzzyKeys.getKeys(normalize(query));
+		if (queryKeys.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		Locale languageOnly = new Locale(locale.getLanguage());
+		Map<IndexedName, Integer> sharedKeys = new HashMap<IndexedName, Integer>();
+		for (String key : queryKeys) {
+			Set<IndexedName> names = namesByFuzzyKey.get(key);
+			if (names != null) {
+				for (IndexedName name : names) {
+					if (name.locale.equals(locale) || name.locale.equals(languageOnly)) {
+						Integer shared = sharedKeys.get(name);
+						sharedKeys.put(name, shared == null ? 1 : shared + 1);
+					}
+				}
+			}
+		}
+
+		Map<Integer, ScoredName> bestByConcept = new HashMap<Integer, ScoredName>();
+		for (Map.Entry<IndexedName, Integer> entry : sharedKeys.entrySet()) {
+			IndexedName name = entry.getKey();
+			double similarity = FuzzyKeys.similarity(entry.getValue(), queryKeys.size(), name.fuzzyKeys.size());
+			if (similarity >= MIN_SIMILARITY) {
+				ScoredName scored = new ScoredName(name, similarity);
+				ScoredName best = bestByConcept.get(name.conceptId);
+				if (best == null || scored.compareTo(best) < 0) {
+					bestByConcept.put(name.conceptId, scored);
+				}
+			}
+		}
+
+		List<ScoredName> matches = new ArrayList<ScoredName>(bestByConcept.values());
+		Collections.sort(matches);
+		return matches;
+	}
+
+	private void addToLookups(Integer conceptId) {
+		for (IndexedName name : namesByConcept.get(conceptId)) {
+			for (String word : StringUtils.split(name.normalizedName, ' ')) {
+				Set<IndexedName> names = namesByWord.get(word);
+				if (names == null) {
+					names = new HashSet<IndexedName>();
+					namesByWord.put(word, names);
+				}
+				names.add(name);
+			}
+			for (String key : name.fuzzyKeys) {
+				Set<IndexedName> names = namesByFuzzyKey.get(key);
+				if (names == null) {
+					names = new HashSet<IndexedName>();
+					namesByFuzzyKey.put(key, names);
+				}
+				names.add(name);
+			}
+		}
+		for (String code : codesByConcept.get(conceptId)) {
+			Set<Integer> conceptIds = conceptsByCode.get(code);
+			if (conceptIds == null) {
+				conceptIds = new HashSet<Integer>();
+				conceptsByCode.put(code, conceptIds);
+			}
+			conceptIds.add(conceptId);
+		}
+	}
+
+	private void removeFromLookups(Integer conceptId) {
+		for (IndexedName name : namesByConcept.get(conceptId)) {
+			for (String word : StringUtils.split(name.normalizedName, ' ')) {
+				Set<IndexedName> names = namesByWord.get(word);
+				if (names != null) {
+					names.remove(name);
+					if (names.isEmpty()) {
+						namesByWord.remove(word);
+					}
+				}
+			}
+			for (String key : name.fuzzyKeys) {
+				Set<IndexedName> names = namesByFuzzyKey.get(key);
+				if (names != null) {
+					names.remove(name);
+					if (names.isEmpty()) {
+						namesByFuzzyKey.remove(key);
+					}
+				}
+			}
+		}
+		for (String code : codesByConcept.get(conceptId)) {
+			Set<Integer> conceptIds = conceptsByCode.get(code);
+			if (conceptIds != null) {
+				conceptIds.remove(conceptId);
+				if (conceptIds.isEmpty()) {
+					conceptsByCode.remove(code);
+				}
+			}
+		}
+	}
+
+	private List<IndexedName> getIndexedNames(Concept concept) {
+		List<IndexedName> names = new ArrayList<IndexedName>();
+		for (ConceptName name : concept.getNames()) {
+			if (!name.isVoided() && name.getConceptNameId() != null && name.getLocale() != null) {
+				names.add(new IndexedName(concept.getConceptId(), name));
+			}
+		}
+		return names;
+	}
+
+	private Set<String> getCodes(Concept concept, Set<Integer> sourceIds) {
+		Set<String> codes = new HashSet<String>();
+		for (ConceptMap mapping : concept.getConceptMappings()) {
+			if (mapping.getConceptReferenceTerm() != null
+			        && mapping.getConceptReferenceTerm().getCode() != null
+			        && mapping.getConceptReferenceTerm().getConceptSource() != null
+			        && sourceIds.contains(mapping.getConceptReferenceTerm().getConceptSource().getConceptSourceId())) {
+				codes.add(mapping.getConceptReferenceTerm().getCode().trim().toLowerCase());
+			}
+		}
+		return codes;
+	}
+
+	private ConceptName getName(Concept concept, Integer conceptNameId) {
+		if (conceptNameId != null) {
+			for (ConceptName name : concept.getNames()) {
+				if (conceptNameId.equals(name.getConceptNameId())) {
+					return name;
+				}
+			}
+		}
+		return null;
+	}
+
+	private Set<Integer> getIds(Collection<?> conceptsOrSources) {
+		Set<Integer> ids = new HashSet<Integer>();
+		if (conceptsOrSources != null) {
+			for (Object item : conceptsOrSources) {
+				ids.add(item instanceof Concept ? ((Concept) item).getConceptId() : ((ConceptSource) item)
+				        .getConceptSourceId());
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * @return the text in lower case, with all punctuation replaced by single spaces
+	 */
+	static String normalize(String text) {
+		return StringUtils.join(StringUtils.split(text.toLowerCase(), " \t\n\r\f-_,.;:()[]{}/\\\"'"), ' ');
+	}
+
+	private static class IndexedName {
+
+		private final int conceptId;
+
+		private final int conceptNameId;
+
+		private final String normalizedName;
+
+		private final Locale locale;
+
+		private final boolean preferred;
+
+		private final Set<String> fuzzyKeys;
+
+		IndexedName(Integer conceptId, ConceptName name) {
+			this.conceptId = conceptId;
+			this.conceptNameId = name.getConceptNameId();
+			this.normalizedName = normalize(name.getName());
+			this.locale = name.getLocale();
+			this.preferred = name.isLocalePreferred() || ConceptNameType.FULLY_SPECIFIED.equals(name.getConceptNameType());
+			this.fuzzyKeys = FuzzyKeys.getKeys(normalizedName);
+		}
+
+		/**
+		 * @return lower is better: whole name matches, then names starting with the query, then names containing words
+		 *         starting with the query words (preferred names before synonyms in each case)
+		 */
+		int rank(String normalizedQuery) {
+			int rank = normalizedName.equals(normalizedQuery) ? 0 : normalizedName.startsWith(normalizedQuery) ? 2 : 4;
+			return preferred ? rank : rank + 1;
+		}
+	}
+
+	private static class ScoredName implements Comparable<ScoredName> {
+
+		private final IndexedName name;
+
+		private final double similarity;
+
+		ScoredName(IndexedName name, double similarity) {
+			this.name = name;
+			this.similarity = similarity;
+		}
+
+		/**
+		 * Most similar first, then preferred names, then shorter names
+		 */
+		@Override
+		public int compareTo(ScoredName other) {
+			int result = Double.compare(other.similarity, similarity);
+			if (result == 0 && name.preferred != other.name.preferred) {
+				result = name.preferred ? -1 : 1;
+			}
+			if (result == 0) {
+				result = name.normalizedName.length() - other.name.normalizedName.length();
+			}
+			return result != 0 ? result : name.conceptNameId - other.name.conceptNameId;
+		}
+	}
+}
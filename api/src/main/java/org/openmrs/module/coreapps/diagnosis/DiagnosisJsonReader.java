@@ -0,0 +1,152 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.coreapps.diagnosis;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.openmrs.api.ConceptService;
+import org.openmrs.module.emrapi.diagnosis.CodedOrFreeTextAnswer;
+import org.openmrs.module.emrapi.diagnosis.Diagnosis;
+
+/**
+ * Reads submitted diagnoses, like {"certainty":"PRESUMED","diagnosisOrder":"PRIMARY","diagnosis":"ConceptName:840"}
+ * (or an array of those), straight from the JSON tokens. The underlying JsonFactory is thread-safe and shared, so
+ * this can be used for any number of submissions without creating a parser per diagnosis.
+ */
+public class DiagnosisJsonReader {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	private final ConceptService conceptService;
+
+	public DiagnosisJsonReader(ConceptService conceptService) {
+		this.conceptService = conceptService;
+	}
+
+	/**
+	 * @param json a diagnosis, or an array of diagnoses
+	 * @return the diagnoses
+	 */
+	public List<Diagnosis> read(String json) throws IOException {
+		JsonParser parser = JSON_FACTORY.createJsonParser(json);
+		try {
+			return readDiagnoses(parser, parser.nextToken());
+		}
+		finally {
+			parser.close();
+		}
+	}
+
+	/**
+	 * Reads the diagnoses to code several non-coded diagnoses with, like
+	 * [{"nonCodedObsId":123,"diagnosis":{"certainty":"PRESUMED","diagnosisOrder":"PRIMARY","diagnosis":"ConceptName:840"}}]
+	 * where each diagnosis may also be an array of diagnoses.
+	 *
+	 * @param json an array of mappings
+	 * @return the diagnoses by non-coded obs id, in the order they were given
+	 */
+	public Map<Integer, List<Diagnosis>> readMappings(String json) throws IOException {
+		Map<Integer, List<Diagnosis>> mappings = new LinkedHashMap<Integer, List<Diagnosis>>();
+
+		JsonParser parser = JSON_FACTORY.createJsonParser(json);
+		try {
+			JsonToken token = parser.nextToken();
+			if (token != JsonToken.START_ARRAY) {
+				throw new JsonParseException("Expected an array of mappings", parser.getCurrentLocation());
+			}
+			while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+				Integer nonCodedObsId = null;
+				List<Diagnosis> diagnoses = null;
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					String field = parser.getCurrentName();
+					token = parser.nextToken();
+					if ("nonCodedObsId".equals(field)) {
+						// accept the id as a number or as a string
+						nonCodedObsId = Integer.valueOf(parser.getText());
+					} else if ("diagnosis".equals(field)) {
+						diagnoses = readDiagnoses(parser, token);
+					} else {
+						parser.skipChildren();
+					}
+				}
+				if (nonCodedObsId == null || diagnoses == null) {
+					throw new JsonParseException("A mapping needs a nonCodedObsId and a diagnosis", parser.getCurrentLocation());
+				}
+				mappings.put(nonCodedObsId, diagnoses);
+			}
+			if (token != JsonToken.END_ARRAY) {
+				throw new JsonParseException("Expected a mapping", parser.getCurrentLocation());
+			}
+		}
+		finally {
+			parser.close();
+		}
+		return mappings;
+	}
+
+	private List<Diagnosis> readDiagnoses(JsonParser parser, JsonToken token) throws IOException {
+		List<Diagnosis> diagnoses = new ArrayList<Diagnosis>();
+		if (token == JsonToken.START_ARRAY) {
+			while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+				diagnoses.add(readDiagnosis(parser));
+			}
+			if (token != JsonToken.END_ARRAY) {
+				throw new JsonParseException("Expected a diagnosis", parser.getCurrentLocation());
+			}
+		} else if (token == JsonToken.START_OBJECT) {
+			diagnoses.add(readDiagnosis(parser));
+		} else {
+			throw new JsonParseException("Expected a diagnosis or an array of diagnoses", parser.getCurrentLocation());
+		}
+		return diagnoses;
+	}
+
+	private Diagnosis readDiagnosis(JsonParser parser) throws IOException {
+		String answer = null;
+		String diagnosisOrder = null;
+		String certainty = null;
+
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			parser.nextToken();
+			if ("diagnosis".equals(field)) {
+				answer = parser.getText();
+			} else if ("diagnosisOrder".equals(field)) {
+				diagnosisOrder = parser.getText();
+			} else if ("certainty".equals(field)) {
+				certainty = parser.getText();
+			} else {
+				parser.skipChildren();
+			}
+		}
+
+		if (answer == null || diagnosisOrder == null || certainty == null) {
+			throw new JsonParseException("A diagnosis needs a diagnosis, diagnosisOrder and certainty",
+			        parser.getCurrentLocation());
+		}
+
+		Diagnosis diagnosis = new Diagnosis(new CodedOrFreeTextAnswer(answer, conceptService),
+		        Diagnosis.Order.valueOf(diagnosisOrder));
+		diagnosis.setCertainty(Diagnosis.Certainty.valueOf(certainty));
+		return diagnosis;
+	}
+}
@@ -0,0 +1,107 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.coreapps.diagnosis;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openmrs.Concept;
+import org.openmrs.ConceptSource;
+import org.openmrs.module.coreapps.cache.LruCache;
+import org.openmrs.ui.framework.SimpleObject;
+import org.springframework.stereotype.Component;
+
+/**
+ * Caches the (simplified) results of diagnosis searches, since clinicians search for the same prefixes over and over.
+ * Entries expire after a few minutes, and the whole cache is cleared by {@link DiagnosisSearchInvalidationAdvice}
+ * whenever a concept or reference term is changed.
+ */
+@Component("coreapps.diagnosisSearchCache")
+public class DiagnosisSearchCache {
+
+	private static final int MAX_SIZE = 1000;
+
+	private static final long TIME_TO_LIVE = 5 * 60 * 1000;
+
+	private final LruCache<String, CachedResults> cache = new LruCache<String, CachedResults>(MAX_SIZE);
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	public String getKey(String query, Locale locale, Collection<Concept> diagnosisSets,
+	                     Collection<ConceptSource> sources, int start, int size) {
+		Set<Integer> setIds = new TreeSet<Integer>();
+		if (diagnosisSets != null) {
+			for (Concept diagnosisSet : diagnosisSets) {
+				setIds.add(diagnosisSet.getConceptId());
+			}
+		}
+		Set<Integer> sourceIds = new TreeSet<Integer>();
+		if (sources != null) {
+			for (ConceptSource source : sources) {
+				sourceIds.add(source.getConceptSourceId());
+			}
+		}
+		return query.trim().toLowerCase() + "|" + locale + "|" + setIds + "|" + sourceIds + "|" + start + "|" + size;
+	}
+
+	/**
+	 * @return the cached results ({ results, totalCount, hasMore }), or null if not cached or expired
+	 */
+	public SimpleObject get(String key) {
+		CachedResults cached = cache.get(key);
+		if (cached == null || cached.expiresAt < System.currentTimeMillis()) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return cached.results;
+	}
+
+	public void put(String key, SimpleObject results) {
+		cache.put(key, new CachedResults(results, System.currentTimeMillis() + TIME_TO_LIVE));
+	}
+
+	public void clear() {
+		cache.clear();
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public int getSize() {
+		return cache.size();
+	}
+
+	private static class CachedResults {
+
+		private final SimpleObject results;
+
+		private final long expiresAt;
+
+		CachedResults(SimpleObject results, long expiresAt) {
+			this.results = results;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.coreapps.diagnosis;
+
+import java.lang.reflect.Method;
+
+import org.openmrs.Concept;
+import org.openmrs.ConceptMapType;
+import org.openmrs.ConceptReferenceTerm;
+import org.openmrs.ConceptSource;
+import org.openmrs.api.context.Context;
+import org.springframework.aop.AfterReturningAdvice;
+
+/**
+ * Keeps the {@link DiagnosisConceptIndex}, the mappings cached by {@link ConceptSearchResultSerializer} and the
+ * {@link DiagnosisSearchCache} up to date when concepts, reference terms, map types or concept sources are changed.
+ * Registered on the ConceptService in config.xml.
+ */
+public class DiagnosisSearchInvalidationAdvice implements AfterReturningAdvice {
+
+	private DiagnosisConceptIndex index;
+
+	private ConceptSearchResultSerializer serializer;
+
+	private DiagnosisSearchCache searchCache;
+
+	public void setIndex(DiagnosisConceptIndex index) {
+		this.index = index;
+	}
+
+	public void setSerializer(ConceptSearchResultSerializer serializer) {
+		this.serializer = serializer;
+	}
+
+	public void setSearchCache(DiagnosisSearchCache searchCache) {
+		this.searchCache = searchCache;
+	}
+
+	@Override
+	public void afterReturning(Object returnValue, Method method, Object[] args, Object target) throws Throwable {
+		String name = method.getName();
+		if (args == null || args.length == 0
+		        || !(name.startsWith("save") || name.startsWith("retire") || name.startsWith("unretire") || name
+		                .startsWith("purge"))) {
+			return;
+		}
+
+		if (args[0] instanceof Concept) {
+			Concept concept = (Concept) args[0];
+			getIndex().conceptChanged(concept, name.startsWith("purge"));
+			getSerializer().conceptChanged(concept.getConceptId());
+			getSearchCache().clear();
+		} else if (args[0] instanceof ConceptReferenceTerm) {
+			getIndex().invalidate();
+			getSerializer().clear();
+			getSearchCache().clear();
+		} else if (args[0] instanceof ConceptMapType || args[0] instanceof ConceptSource) {
+			// their names are part of the serialized mappings, but not of the index
+			getSerializer().clear();
+			getSearchCache().clear();
+		}
+	}
+
+	private DiagnosisSearchCache getSearchCache() {
+		if (searchCache == null) {
+			searchCache = Context.getRegisteredComponent("coreapps.diagnosisSearchCache", DiagnosisSearchCache.class);
+		}
+		return searchCache;
+	}
+
+	private ConceptSearchResultSerializer getSerializer() {
+		if (serializer == null) {
+			serializer = Context.getRegisteredComponent("coreapps.conceptSearchResultSerializer",
+			    ConceptSearchResultSerializer.class);
+		}
+		return serializer;
+	}
+
+	private DiagnosisConceptIndex getIndex() {
+		if (index == null) {
+			index = Context.getRegisteredComponent("coreapps.diagnosisConceptIndex", DiagnosisConceptIndex.class);
+		}
+		return index;
+	}
+}
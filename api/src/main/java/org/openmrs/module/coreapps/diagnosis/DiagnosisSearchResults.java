@@ -0,0 +1,56 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.coreapps.diagnosis;
+
+import java.util.List;
+
+import org.openmrs.ConceptSearchResult;
+
+/**
+ * A page of diagnosis search results.
+ */
+public class DiagnosisSearchResults {
+
+	private final List<ConceptSearchResult> results;
+
+	private final Integer totalCount;
+
+	private final boolean hasMore;
+
+	/**
+	 * @param results the results in the requested page
+	 * @param totalCount the total number of results, or null if not known
+	 * @param hasMore whether there are more results after this page
+	 */
+	public DiagnosisSearchResults(List<ConceptSearchResult> results, Integer totalCount, boolean hasMore) {
+		this.results = results;
+		this.totalCount = totalCount;
+		this.hasMore = hasMore;
+	}
+
+	public List<ConceptSearchResult> getResults() {
+		return results;
+	}
+
+	/**
+	 * @return the total number of results, or null if not known
+	 */
+	public Integer getTotalCount() {
+		return totalCount;
+	}
+
+	public boolean hasMore() {
+		return hasMore;
+	}
+}
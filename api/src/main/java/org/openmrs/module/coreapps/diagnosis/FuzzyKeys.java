@@ -0,0 +1,109 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.coreapps.diagnosis;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * The keys used to match misspelled diagnoses: the trigrams of each word (padded with spaces, so that the start and
+ * end of words count), and the Soundex code of each word. Two texts are similar if they share many keys.
+ */
+class FuzzyKeys {
+
+	// the Soundex digit for each letter from a to z, 0 for those that are not coded
+	private static final String SOUNDEX_CODES = "01230120022455012623010202";
+
+	private FuzzyKeys() {
+	}
+
+	/**
+	 * @param normalizedText a text normalized with {@link DiagnosisConceptIndex#normalize(String)}
+	 * @return the trigrams and phonetic keys of the words of the text
+	 */
+	static Set<String> getKeys(String normalizedText) {
+		Set<String> keys = new HashSet<String>();
+		for (String word : StringUtils.split(normalizedText, ' ')) {
+			String padded = " " + word + " ";
+			for (int i = 0; i + 3 <= padded.length(); i++) {
+				keys.add(padded.substring(i, i + 3));
+			}
+			String soundex = soundex(word);
+			if (soundex != null) {
+				keys.add("#" + soundex);
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * @param normalizedText a text normalized with {@link DiagnosisConceptIndex#normalize(String)}
+	 * @return the Soundex codes of the words of the text (or the words themselves, if they have no letters)
+	 */
+	static String getPhoneticKey(String normalizedText) {
+		List<String> codes = new ArrayList<String>();
+		for (String word : StringUtils.split(normalizedText, ' ')) {
+			String soundex = soundex(word);
+			codes.add(soundex != null ? soundex : word);
+		}
+		return StringUtils.join(codes, ' ');
+	}
+
+	/**
+	 * @return the Dice coefficient of the two key sets, from 0 (nothing in common) to 1 (the same keys)
+	 */
+	static double similarity(int sharedKeys, int keyCount, int otherKeyCount) {
+		return keyCount + otherKeyCount == 0 ? 0 : 2.0 * sharedKeys / (keyCount + otherKeyCount);
+	}
+
+	/**
+	 * @param word a lower case word
+	 * @return the American Soundex code of the word (ignoring anything but the letters a to z), or null if it has no
+	 *         such letters
+	 */
+	static String soundex(String word) {
+		StringBuilder code = new StringBuilder(4);
+		char last = 0;
+		for (int i = 0; i < word.length() && code.length() < 4; i++) {
+			char c = word.charAt(i);
+			if (c < 'a' || c > 'z') {
+				continue;
+			}
+			char digit = SOUNDEX_CODES.charAt(c - 'a');
+			if (code.length() == 0) {
+				code.append(Character.toUpperCase(c));
+				last = digit;
+			} else if (digit == '0') {
+				// vowels separate letters with the same code, h and w don't
+				if (c != 'h' && c != 'w') {
+					last = '0';
+				}
+			} else if (digit != last) {
+				code.append(digit);
+				last = digit;
+			}
+		}
+		if (code.length() == 0) {
+			return null;
+		}
+		while (code.length() < 4) {
+			code.append('0');
+		}
+		return code.toString();
+	}
+}
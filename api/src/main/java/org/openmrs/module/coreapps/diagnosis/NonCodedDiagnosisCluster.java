@@ -0,0 +1,108 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.coreapps.diagnosis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The non-coded diagnoses whose texts sound the same, e.g. "Malaria", "malarya" and "Maleria", so that they can be
+ * coded together.
+ */
+public class NonCodedDiagnosisCluster {
+
+	private final String key;
+
+	private final List<Variant> variants = new ArrayList<Variant>();
+
+	private int count;
+
+	public NonCodedDiagnosisCluster(String key) {
+		this.key = key;
+	}
+
+	/**
+	 * @return the phonetic key shared by the texts of the cluster
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	void addVariant(String text, int count) {
+		variants.add(new Variant(text, count));
+		this.count += count;
+		Collections.sort(variants, new Comparator<Variant>() {
+
+			@Override
+			public int compare(Variant left, Variant right) {
+				int result = right.count - left.count;
+				return result != 0 ? result : left.text.compareTo(right.text);
+			}
+		});
+	}
+
+	/**
+	 * @return the texts of the cluster, most frequent first
+	 */
+	public List<Variant> getVariants() {
+		return Collections.unmodifiableList(variants);
+	}
+
+	public List<String> getTexts() {
+		List<String> texts = new ArrayList<String>();
+		for (Variant variant : variants) {
+			texts.add(variant.text);
+		}
+		return texts;
+	}
+
+	/**
+	 * @return the most frequent text of the cluster
+	 */
+	public String getLabel() {
+		return variants.get(0).text;
+	}
+
+	/**
+	 * @return the number of non-coded diagnoses in the cluster
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	public static class Variant {
+
+		private final String text;
+
+		private final int count;
+
+		Variant(String text, int count) {
+			this.text = text;
+			this.count = count;
+		}
+
+		/**
+		 * @return the text, in lower case and without surrounding whitespace
+		 */
+		public String getText() {
+			return text;
+		}
+
+		public int getCount() {
+			return count;
+		}
+	}
+}
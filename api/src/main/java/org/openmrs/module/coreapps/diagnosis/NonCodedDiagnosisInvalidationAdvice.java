@@ -0,0 +1,82 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.coreapps.diagnosis;
+
+import java.lang.reflect.Method;
+
+import org.openmrs.Encounter;
+import org.openmrs.Obs;
+import org.openmrs.api.context.Context;
+import org.springframework.aop.AfterReturningAdvice;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Drops the clusters of {@link NonCodedDiagnosisMatcher} when a non-coded diagnosis obs is saved, voided or purged,
+ * either directly or along with its encounter. Registered on the ObsService and EncounterService in config.xml.
+ * <p/>
+ * If the change is made within a transaction, the clusters are dropped once more after the transaction commits, since
+ * clusters built by another request before then would still count the obs as it was before the change.
+ */
+public class NonCodedDiagnosisInvalidationAdvice implements AfterReturningAdvice {
+
+	private NonCodedDiagnosisMatcher matcher;
+
+	public void setMatcher(NonCodedDiagnosisMatcher matcher) {
+		this.matcher = matcher;
+	}
+
+	@Override
+	public void afterReturning(Object returnValue, Method method, Object[] args, Object target) throws Throwable {
+		String name = method.getName();
+		if (args == null || args.length == 0
+		        || !(name.startsWith("save") || name.startsWith("void") || name.startsWith("unvoid") || name
+		                .startsWith("purge"))) {
+			return;
+		}
+
+		final NonCodedDiagnosisMatcher matcher = getMatcher();
+		boolean affected = false;
+		if (args[0] instanceof Obs) {
+			affected = matcher.isAffectedBy((Obs) args[0]);
+		} else if (args[0] instanceof Encounter) {
+			for (Obs obs : ((Encounter) args[0]).getAllObs(true)) {
+				if (matcher.isAffectedBy(obs)) {
+					affected = true;
+					break;
+				}
+			}
+		}
+
+		if (affected) {
+			matcher.invalidate();
+			if (TransactionSynchronizationManager.isSynchronizationActive()) {
+				TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+					@Override
+					public void afterCommit() {
+						matcher.invalidate();
+					}
+				});
+			}
+		}
+	}
+
+	private NonCodedDiagnosisMatcher getMatcher() {
+		if (matcher == null) {
+			matcher = Context.getRegisteredComponent("coreapps.nonCodedDiagnosisMatcher", NonCodedDiagnosisMatcher.class);
+		}
+		return matcher;
+	}
+}
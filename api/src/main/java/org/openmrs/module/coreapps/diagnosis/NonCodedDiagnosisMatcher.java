@@ -0,0 +1,184 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.coreapps.diagnosis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.Concept;
+import org.openmrs.Obs;
+import org.openmrs.module.coreapps.db.CoreAppsDAO;
+import org.openmrs.module.emrapi.EmrApiProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+/**
+ * Groups the existing non-coded diagnoses into {@link NonCodedDiagnosisCluster}s of texts with the same phonetic key
+ * (see {@link FuzzyKeys#getPhoneticKey(String)}), so that the misspellings of a diagnosis can be coded in one go. The
+ * coded diagnoses they may have meant are found with {@link DiagnosisConceptIndex#findCandidates}.
+ * <p/>
+ * The clusters are built once, with one group-by query, and kept (by key) until a non-coded diagnosis obs is changed,
+ * see {@link NonCodedDiagnosisInvalidationAdvice}.
+ */
+@Component("coreapps.nonCodedDiagnosisMatcher")
+public class NonCodedDiagnosisMatcher {
+
+	@Autowired
+	@Qualifier("emrApiProperties")
+	private EmrApiProperties emrApiProperties;
+
+	@Autowired
+	private CoreAppsDAO coreAppsDAO;
+
+	private volatile Index index;
+
+	/**
+	 * Incremented whenever the index is invalidated, so that an index that was being built at the time is not kept
+	 */
+	private long generation;
+
+	/**
+	 * The id of the non-coded diagnosis concept the index was last built for, or null if it was never built
+	 */
+	private volatile Integer nonCodedConceptId;
+
+	public void setEmrApiProperties(EmrApiProperties emrApiProperties) {
+		this.emrApiProperties = emrApiProperties;
+	}
+
+	public void setCoreAppsDAO(CoreAppsDAO coreAppsDAO) {
+		this.coreAppsDAO = coreAppsDAO;
+	}
+
+	/**
+	 * @return the clusters of the (non-voided) non-coded diagnoses, biggest first
+	 */
+	public List<NonCodedDiagnosisCluster> getClusters() {
+		return getIndex().clusters;
+	}
+
+	/**
+	 * @param key the key of a cluster
+	 * @return the cluster, or null if there are no (longer) non-coded diagnoses with that key
+	 */
+	public NonCodedDiagnosisCluster getCluster(String key) {
+		return getIndex().clustersByKey.get(key);
+	}
+
+	/**
+	 * @return whether the clusters need to be built again when the given obs is changed, i.e. whether it is (or may
+	 *         be) a non-coded diagnosis, or a diagnosis obs group with one, and the clusters were ever built
+	 */
+	public boolean isAffectedBy(Obs obs) {
+		Integer conceptId = nonCodedConceptId;
+		if (conceptId == null) {
+			return false;
+		}
+		return isAffectedBy(obs, conceptId);
+	}
+
+	private boolean isAffectedBy(Obs obs, Integer nonCodedConceptId) {
+		if (obs.getConcept() == null || nonCodedConceptId.equals(obs.getConcept().getConceptId())) {
+			return true;
+		}
+		// emrapi saves each diagnosis as an obs group, with the non-coded text as one of its members
+		Set<Obs> groupMembers = obs.getGroupMembers(true);
+		if (groupMembers != null) {
+			for (Obs groupMember : groupMembers) {
+				if (isAffectedBy(groupMember, nonCodedConceptId)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Drops the clusters, so that they are built again the next time they are asked for
+	 */
+	public synchronized void invalidate() {
+		generation++;
+		index = null;
+	}
+
+	private Index getIndex() {
+		Index current = index;
+		if (current == null) {
+			long builtFor;
+			synchronized (this) {
+				builtFor = generation;
+			}
+
+			current = buildIndex();
+
+			synchronized (this) {
+				if (generation == builtFor) {
+					index = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	private Index buildIndex() {
+		Concept nonCodedConcept = emrApiProperties.getDiagnosisMetadata().getNonCodedDiagnosisConcept();
+		nonCodedConceptId = nonCodedConcept.getConceptId();
+		Map<String, Integer> counts = coreAppsDAO.getValueTextCounts(nonCodedConcept);
+
+		Map<String, NonCodedDiagnosisCluster> clustersByKey = new HashMap<String, NonCodedDiagnosisCluster>();
+		for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+			String key = FuzzyKeys.getPhoneticKey(DiagnosisConceptIndex.normalize(entry.getKey()));
+			if (StringUtils.isEmpty(key)) {
+				// only punctuation, group it by its text
+				key = entry.getKey();
+			}
+			NonCodedDiagnosisCluster cluster = clustersByKey.get(key);
+			if (cluster == null) {
+				cluster = new NonCodedDiagnosisCluster(key);
+				clustersByKey.put(key, cluster);
+			}
+			cluster.addVariant(entry.getKey(), entry.getValue());
+		}
+
+		List<NonCodedDiagnosisCluster> clusters = new ArrayList<NonCodedDiagnosisCluster>(clustersByKey.values());
+		Collections.sort(clusters, new Comparator<NonCodedDiagnosisCluster>() {
+
+			@Override
+			public int compare(NonCodedDiagnosisCluster left, NonCodedDiagnosisCluster right) {
+				int result = right.getCount() - left.getCount();
+				return result != 0 ? result : left.getKey().compareTo(right.getKey());
+			}
+		});
+		return new Index(Collections.unmodifiableList(clusters), clustersByKey);
+	}
+
+	private static class Index {
+
+		private final List<NonCodedDiagnosisCluster> clusters;
+
+		private final Map<String, NonCodedDiagnosisCluster> clustersByKey;
+
+		Index(List<NonCodedDiagnosisCluster> clusters, Map<String, NonCodedDiagnosisCluster> clustersByKey) {
+			this.clusters = clusters;
+			this.clustersByKey = clustersByKey;
+		}
+	}
+}
@@ -0,0 +1,241 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.coreapps.layout;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openmrs.PersonAddress;
+
+/**
+ * The line by line format of an address layout template (see
+ * {@link org.openmrs.module.coreapps.AddressSupportCompatibility}), compiled into literal text and address fields,
+ * where each field is read straight from its PersonAddress getter. Compiled layouts are immutable and are meant to be
+ * cached for as long as the layout template does not change.
+ */
+public class AddressLayout {
+
+	private static final Map<String, AddressField> FIELDS = new HashMap<String, AddressField>();
+
+	static {
+		FIELDS.put("address1", new AddressField() {
+
+			@Override
+			public String getValue(PersonAddress address) {
+				return address.getAddress1();
+			}
+		});
+		FIELDS.put("address2", new AddressField() {
+
+			@Override
+			public String getValue(PersonAddress address) {
+				return address.getAddress2();
+			}
+		});
+		FIELDS.put("address3", new AddressField() {
+
+			@Override
+			public String getValue(PersonAddress address) {
+				return address.getAddress3();
+			}
+		});
+		FIELDS.put("address4", new AddressField() {
+
+			@Override
+			public String getValue(PersonAddress address) {
+				return address.getAddress4();
+			}
+		});
+		FIELDS.put("address5", new AddressField() {
+
+			@Override
+			public String getValue(PersonAddress address) {
+				return address.getAddress5();
+			}
+		});
+		FIELDS.put("address6", new AddressField() {
+
+			@Override
+			public String getValue(PersonAddress address) {
+				return address.getAddress6();
+			}
+		});
+		FIELDS.put("cityVillage", new AddressField() {
+
+			@Override
+			public String getValue(PersonAddress address) {
+				return address.getCityVillage();
+			}
+		});
+		FIELDS.put("countyDistrict", new AddressField() {
+
+			@Override
+			public String getValue(PersonAddress address) {
+				return address.getCountyDistrict();
+			}
+		});
+		FIELDS.put("stateProvince", new AddressField() {
+
+			@Override
+			public String getValue(PersonAddress address) {
+				return address.getStateProvince();
+			}
+		});
+		FIELDS.put("country", new AddressField() {
+
+			@Override
+			public String getValue(PersonAddress address) {
+				return address.getCountry();
+			}
+		});
+		FIELDS.put("postalCode", new AddressField() {
+
+			@Override
+			public String getValue(PersonAddress address) {
+				return address.getPostalCode();
+			}
+		});
+		FIELDS.put("latitude", new AddressField() {
+
+			@Override
+			public String getValue(PersonAddress address) {
+				return address.getLatitude();
+			}
+		});
+		FIELDS.put("longitude", new AddressField() {
+
+			@Override
+			public String getValue(PersonAddress address) {
+				return address.getLongitude();
+			}
+		});
+	}
+
+	private final List<List<Segment>> lines;
+
+	private AddressLayout(List<List<Segment>> lines) {
+		this.lines = lines;
+	}
+
+	/**
+	 * Every occurrence of a token in a line is replaced by the value of that address property (where tokens overlap,
+	 * the longest one wins), the rest of the line is kept as it is.
+	 *
+	 * @param lineByLineFormat the lines of the layout template
+	 * @param tokens the address properties that can be used in the lines
+	 * @return the compiled layout
+	 * @throws IllegalStateException if a token used in the lines is not an address property
+	 */
+	public static AddressLayout compile(List<String> lineByLineFormat, Collection<String> tokens) {
+		List<List<Segment>> lines = new ArrayList<List<Segment>>();
+		for (String lineFormat : lineByLineFormat) {
+			List<Segment> segments = new ArrayList<Segment>();
+			StringBuilder text = new StringBuilder();
+			int i = 0;
+			while (i < lineFormat.length()) {
+				String token = getLongestTokenAt(lineFormat, i, tokens);
+				if (token == null) {
+					text.append(lineFormat.charAt(i));
+					i++;
+				} else {
+					if (text.length() > 0) {
+						segments.add(new Segment(text.toString(), null));
+						text.setLength(0);
+					}
+					segments.add(new Segment(null, getField(token)));
+					i += token.length();
+				}
+			}
+			if (text.length() > 0) {
+				segments.add(new Segment(text.toString(), null));
+			}
+			lines.add(segments);
+		}
+		return new AddressLayout(lines);
+	}
+
+	/**
+	 * @return the formatted lines, with empty values for the address properties that are not set
+	 */
+	public List<String> format(PersonAddress address) {
+		List<String> formattedLines = new ArrayList<String>(lines.size());
+		for (List<Segment> line : lines) {
+			StringBuilder formatted = new StringBuilder();
+			for (Segment segment : line) {
+				if (segment.field == null) {
+					formatted.append(segment.text);
+				} else {
+					String value = segment.field.getValue(address);
+					if (value != null) {
+						formatted.append(value);
+					}
+				}
+			}
+			formattedLines.add(formatted.toString());
+		}
+		return formattedLines;
+	}
+
+	private static String getLongestTokenAt(String lineFormat, int index, Collection<String> tokens) {
+		String longest = null;
+		for (String token : tokens) {
+			if (token.length() > 0 && lineFormat.startsWith(token, index)
+			        && (longest == null || token.length() > longest.length())) {
+				longest = token;
+			}
+		}
+		return longest;
+	}
+
+	private static AddressField getField(String token) {
+		AddressField field = FIELDS.get(token);
+		if (field != null) {
+			return field;
+		}
+
+		// e.g. address7 to address15, which only exist in some versions of OpenMRS
+		final Method getter = PropertyGetters.getReadMethod(PersonAddress.class, token);
+		if (getter == null) {
+			throw new IllegalStateException("The token '" + token + "' in the default address layout is not an address property");
+		}
+		return new AddressField() {
+
+			@Override
+			public String getValue(PersonAddress address) {
+				return PropertyGetters.invoke(getter, address);
+			}
+		};
+	}
+
+	private interface AddressField {
+
+		String getValue(PersonAddress address);
+	}
+
+	private static class Segment {
+
+		private final String text;
+
+		private final AddressField field;
+
+		Segment(String text, AddressField field) {
+			this.text = text;
+			this.field = field;
+		}
+	}
+}
@@ -0,0 +1,204 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.coreapps.layout;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.PersonName;
+import org.openmrs.api.APIException;
+
+/**
+ * A name layout template (see {@link org.openmrs.module.coreapps.NameSupportCompatibility}) compiled into lines of
+ * literal text and name fields, where each field is read straight from its PersonName getter. Compiled layouts are
+ * immutable and are meant to be cached for as long as the layout template does not change.
+ */
+public class NameLayout {
+
+	private static final Map<String, NameField> FIELDS = new HashMap<String, NameField>();
+
+	static {
+		FIELDS.put("prefix", new NameField() {
+
+			@Override
+			public String getValue(PersonName name) {
+				return name.getPrefix();
+			}
+		});
+		FIELDS.put("givenName", new NameField() {
+
+			@Override
+			public String getValue(PersonName name) {
+				return name.getGivenName();
+			}
+		});
+		FIELDS.put("middleName", new NameField() {
+
+			@Override
+			public String getValue(PersonName name) {
+				return name.getMiddleName();
+			}
+		});
+		FIELDS.put("familyNamePrefix", new NameField() {
+
+			@Override
+			public String getValue(PersonName name) {
+				return name.getFamilyNamePrefix();
+			}
+		});
+		FIELDS.put("familyName", new NameField() {
+
+			@Override
+			public String getValue(PersonName name) {
+				return name.getFamilyName();
+			}
+		});
+		FIELDS.put("familyName2", new NameField() {
+
+			@Override
+			public String getValue(PersonName name) {
+				return name.getFamilyName2();
+			}
+		});
+		FIELDS.put("familyNameSuffix", new NameField() {
+
+			@Override
+			public String getValue(PersonName name) {
+				return name.getFamilyNameSuffix();
+			}
+		});
+		FIELDS.put("degree", new NameField() {
+
+			@Override
+			public String getValue(PersonName name) {
+				return name.getDegree();
+			}
+		});
+	}
+
+	private final List<List<Segment>> lines;
+
+	private NameLayout(List<List<Segment>> lines) {
+		this.lines = lines;
+	}
+
+	/**
+	 * @param lines the lines of the layout template, each a list of tokens and literal text
+	 * @param layoutToken the value of "isToken" that marks a token
+	 * @param nameMappings the labels of the name fields, by field name
+	 * @return the compiled layout
+	 * @throws APIException if a token is not a PersonName property
+	 */
+	public static NameLayout compile(List<List<Map<String, String>>> lines, String layoutToken,
+	                                 Map<String, String> nameMappings) {
+		List<List<Segment>> compiledLines = new ArrayList<List<Segment>>();
+		for (List<Map<String, String>> line : lines) {
+			List<Segment> segments = new ArrayList<Segment>();
+			for (Map<String, String> lineToken : line) {
+				if (StringUtils.equals(lineToken.get("isToken"), layoutToken)) {
+					String codeName = lineToken.get("codeName");
+					segments.add(new Segment(null, getField(codeName), nameMappings.get(codeName)));
+				} else {
+					segments.add(new Segment(lineToken.get("displayText"), null, null));
+				}
+			}
+			compiledLines.add(segments);
+		}
+		return new NameLayout(compiledLines);
+	}
+
+	/**
+	 * Formats a name one field per line (the lines without any field set are left out).
+	 *
+	 * @return the lines, by the label of their (last) field
+	 */
+	public Map<String, String> format(PersonName personName) {
+		Map<String, String> nameFields = new LinkedHashMap<String, String>();
+		for (List<Segment> line : lines) {
+			String nameLabel = "";
+			StringBuilder nameLine = new StringBuilder();
+			boolean hasToken = false;
+			for (Segment segment : line) {
+				if (segment.field != null) {
+					String value = segment.field.getValue(personName);
+					nameLabel = segment.label;
+					if (StringUtils.isNotBlank(value)) {
+						hasToken = true;
+						nameLine.append(value);
+					}
+				} else {
+					nameLine.append(segment.text);
+				}
+			}
+			// only display a line if there's a token within it we've been able to resolve
+			if (hasToken && StringUtils.isNotBlank(nameLine.toString())) {
+				nameFields.put(nameLabel, nameLine.toString());
+			}
+		}
+		return nameFields;
+	}
+
+	private static NameField getField(String codeName) {
+		NameField field = FIELDS.get(codeName);
+		if (field != null) {
+			return field;
+		}
+
+		// not one of the standard fields, fall back to the getter of the property, looked up only once
+		Method getter = PropertyGetters.getReadMethod(PersonName.class, codeName);
+		if (getter == null) {
+			throw new APIException("The name layout refers to an unknown PersonName property: " + codeName);
+		}
+		return new GetterNameField(getter);
+	}
+
+	private interface NameField {
+
+		String getValue(PersonName name);
+	}
+
+	private static class GetterNameField implements NameField {
+
+		private final Method getter;
+
+		GetterNameField(Method getter) {
+			this.getter = getter;
+		}
+
+		@Override
+		public String getValue(PersonName name) {
+			return PropertyGetters.invoke(getter, name);
+		}
+	}
+
+	private static class Segment {
+
+		private final String text;
+
+		private final NameField field;
+
+		private final String label;
+
+		Segment(String text, NameField field, String label) {
+			this.text = text;
+			this.field = field;
+			this.label = label;
+		}
+	}
+}
@@ -0,0 +1,61 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.coreapps.layout;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+
+import org.openmrs.api.APIException;
+
+/**
+ * Looks up property getters for the layouts' fields that have no direct accessor (e.g. properties that only exist in
+ * some versions of OpenMRS).
+ */
+class PropertyGetters {
+
+	private PropertyGetters() {
+	}
+
+	/**
+	 * @return the getter of the property, or null if the class has no such readable property
+	 */
+	static Method getReadMethod(Class<?> type, String property) {
+		try {
+			for (PropertyDescriptor descriptor : Introspector.getBeanInfo(type).getPropertyDescriptors()) {
+				if (descriptor.getName().equals(property)) {
+					return descriptor.getReadMethod();
+				}
+			}
+			return null;
+		}
+		catch (IntrospectionException e) {
+			throw new APIException("Unable to introspect " + type, e);
+		}
+	}
+
+	/**
+	 * @return the value returned by the getter, as a string
+	 */
+	static String invoke(Method getter, Object object) {
+		try {
+			Object value = getter.invoke(object);
+			return value == null ? null : value.toString();
+		}
+		catch (Exception e) {
+			throw new APIException("Unable to call " + getter.getName() + " on " + object.getClass(), e);
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package org.openmrs.module.coreapps.parser;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.openmrs.Encounter;
+import org.openmrs.User;
+import org.openmrs.module.emrapi.EmrApiConstants;
+import org.openmrs.module.emrapi.encounter.EncounterDomainWrapper;
+
+/**
+ * Decides whether a user may edit or delete encounters. The user's privileges are only looked up once, so a single
+ * instance should be used for all the encounters being displayed to that user.
+ * <p/>
+ * If the ids of the encounters the user participated in are known up front (see
+ * {@link org.openmrs.module.coreapps.db.CoreAppsDAO#getEncounterIdsParticipatedIn}), participation is a set lookup;
+ * otherwise it is worked out from the encounter itself, at most once per encounter.
+ */
+public class EncounterPermissionEvaluator {
+
+    private final User user;
+
+    private final boolean canEditAnyEncounter;
+
+    private final boolean canDeleteAnyEncounter;
+
+    private final Set<Integer> participatedEncounterIds;
+
+    private final Map<Encounter, Boolean> participation = new IdentityHashMap<Encounter, Boolean>();
+
+    public EncounterPermissionEvaluator(User user) {
+        this(user, null);
+    }
+
+    /**
+     * @param user the user whose permissions to evaluate
+     * @param participatedEncounterIds the ids of the encounters the user participated in, or null if not known
+     */
+    public EncounterPermissionEvaluator(User user, Set<Integer> participatedEncounterIds) {
+        this.user = user;
+        this.canEditAnyEncounter = user.isSuperUser() || user.hasPrivilege(EmrApiConstants.PRIVILEGE_EDIT_ENCOUNTER);
+        this.canDeleteAnyEncounter = user.hasPrivilege(EmrApiConstants.PRIVILEGE_DELETE_ENCOUNTER);
+        this.participatedEncounterIds = participatedEncounterIds;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public boolean canEdit(Encounter encounter) {
+        return canEditAnyEncounter || participatedIn(encounter);
+    }
+
+    public boolean canDelete(Encounter encounter) {
+        return canDeleteAnyEncounter || participatedIn(encounter);
+    }
+
+    private boolean participatedIn(Encounter encounter) {
+        if (participatedEncounterIds != null && encounter.getEncounterId() != null) {
+            return participatedEncounterIds.contains(encounter.getEncounterId());
+        }
+
+        Boolean participated = participation.get(encounter);
+        if (participated == null) {
+            participated = new EncounterDomainWrapper(encounter).participatedInEncounter(user);
+            participation.put(encounter, participated);
+        }
+        return participated;
+    }
+}
@@ -1,5 +1,6 @@
 package org.openmrs.module.coreapps.parser;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -16,17 +17,23 @@ import org.openmrs.api.context.Context;
 import org.openmrs.module.appframework.domain.Extension;
 import org.openmrs.module.appframework.service.AppFrameworkService;
 import org.openmrs.module.coreapps.CoreAppsConstants;
-import org.openmrs.module.emrapi.EmrApiConstants;
 import org.openmrs.module.emrapi.encounter.EncounterDomainWrapper;
 import org.openmrs.ui.framework.SimpleObject;
 import org.openmrs.ui.framework.UiUtils;
 
 public class ParseEncounterToJson {
 
+    private static final SimpleObjectTemplate ENCOUNTER_TEMPLATE = new SimpleObjectTemplate("encounterId", "location",
+            "encounterDatetime", "encounterProviders.provider", "voided", "form");
+
     private AppFrameworkService appFrameworkService;
     private UiUtils uiUtils;
     private EncounterService encounterService;
 
+    private Map<String, String> primaryEncounterRoleUuids;
+
+    private Map<String, EncounterRole> primaryEncounterRoles = new HashMap<String, EncounterRole>();
+
     public ParseEncounterToJson(AppFrameworkService appFrameworkService, UiUtils uiUtils, EncounterService encounterService) {
         this.appFrameworkService = appFrameworkService;
         this.uiUtils = uiUtils;
@@ -35,12 +42,16 @@ public class ParseEncounterToJson {
 
 
     public SimpleObject createEncounterJSON(User authenticatedUser, Encounter encounter) {
+        return createEncounterJSON(new EncounterPermissionEvaluator(authenticatedUser), encounter);
+    }
 
-        boolean canDelete = authenticatedUser.hasPrivilege(EmrApiConstants.PRIVILEGE_DELETE_ENCOUNTER);
-        boolean canEdit = authenticatedUser.hasPrivilege(EmrApiConstants.PRIVILEGE_EDIT_ENCOUNTER);
+    /**
+     * Same as {@link #createEncounterJSON(User, Encounter)}, but reuses the given evaluator for the canEdit and
+     * canDelete flags, which is much cheaper when parsing many encounters for the same user.
+     */
+    public SimpleObject createEncounterJSON(EncounterPermissionEvaluator permissions, Encounter encounter) {
 
-        SimpleObject simpleEncounter = SimpleObject.fromObject(new EncounterDomainWrapper(encounter), uiUtils, "encounterId",
-                "location", "encounterDatetime", "encounterProviders.provider", "voided", "form");
+        SimpleObject simpleEncounter = ENCOUNTER_TEMPLATE.toSimpleObject(new EncounterDomainWrapper(encounter), uiUtils);
 
         // UUID is not provided by EncounterDomainWrapper, adding it here.
         simpleEncounter.put("uuid", encounter.getUuid());
@@ -73,15 +84,11 @@ public class ParseEncounterToJson {
         }
         simpleEncounter.put("primaryProvider", uiUtils.format(primaryProvider));
 
-        if (verifyIfUserHasPermissionToDeleteAnEncounter(encounter, authenticatedUser, canDelete)) {
+        if (permissions.canDelete(encounter)) {
             simpleEncounter.put("canDelete", true);
         }
 
-        if (verifyIfUserHasPermissionToEditAnEncounter(encounter, authenticatedUser, canEdit)) {
-            simpleEncounter.put("canEdit", true);
-        } else {
-            simpleEncounter.put("canEdit", false);
-        }
+        simpleEncounter.put("canEdit", permissions.canEdit(encounter));
 
         if (encounter.getVisit() != null) {
             simpleEncounter.put("visitId", encounter.getVisit().getId());
@@ -89,40 +96,50 @@ public class ParseEncounterToJson {
         return simpleEncounter;
     }
 
-    private boolean verifyIfUserHasPermissionToEditAnEncounter(Encounter encounter, User authenticatedUser,
-                                                               boolean canEdit) {
-        EncounterDomainWrapper encounterDomainWrapper = new EncounterDomainWrapper(encounter);
-        boolean userParticipatedInEncounter = encounterDomainWrapper.participatedInEncounter(authenticatedUser);
-        boolean userIsAdmin = authenticatedUser.isSuperUser();
-        return (canEdit || userParticipatedInEncounter) || userIsAdmin;
-    }
-
     private EncounterRole getPrimaryEncounterRoleForEncounter(Encounter encounter) {
+        String primaryEncounterRoleUuid = getPrimaryEncounterRoleUuids().get(encounter.getEncounterType().getUuid());
+        if (primaryEncounterRoleUuid == null) {
+            return null;
+        }
 
-        // TODO this whole thing seems a bit back-to-front
-        List<Extension> encounterTemplateExtensions = appFrameworkService
-                .getExtensionsForCurrentUser(CoreAppsConstants.ENCOUNTER_TEMPLATE_EXTENSION);
-
-        for (Extension extension : encounterTemplateExtensions) {
-            Object supportedEncounterTypes = extension.getExtensionParams().get("supportedEncounterTypes");
+        if (!primaryEncounterRoles.containsKey(primaryEncounterRoleUuid)) {
+            primaryEncounterRoles.put(primaryEncounterRoleUuid,
+                    encounterService.getEncounterRoleByUuid(primaryEncounterRoleUuid));
+        }
+        return primaryEncounterRoles.get(primaryEncounterRoleUuid);
+    }
 
-            if (supportedEncounterTypes != null) {
-                for (String encounterTypeUuid : ((Map<String,Object>) supportedEncounterTypes).keySet()) {
-                    if (encounterTypeUuid.equals(encounter.getEncounterType().getUuid())) {
-                        Object primaryEncounterRole = ((Map<String,Object>) ((Map<String, Object>) supportedEncounterTypes)
-                                .get(encounterTypeUuid)).get("primaryEncounterRole");
-                        if (primaryEncounterRole != null) {
-                            return encounterService.getEncounterRoleByUuid((String) primaryEncounterRole);
-                        }
-                        else {
-                            return null;
+    /**
+     * Indexes the primary encounter role configured for each encounter type by the encounter template extensions.
+     * This is built the first time it is needed, and then kept for the life of this parser (i.e. a single request),
+     * so that it reflects the extensions available to the current user.
+     *
+     * @return encounter type uuid -> primary encounter role uuid (null if the template does not specify one)
+     */
+    private Map<String, String> getPrimaryEncounterRoleUuids() {
+        if (primaryEncounterRoleUuids == null) {
+            Map<String, String> index = new HashMap<String, String>();
+
+            // TODO this whole thing seems a bit back-to-front
+            List<Extension> encounterTemplateExtensions = appFrameworkService
+                    .getExtensionsForCurrentUser(CoreAppsConstants.ENCOUNTER_TEMPLATE_EXTENSION);
+
+            for (Extension extension : encounterTemplateExtensions) {
+                Object supportedEncounterTypes = extension.getExtensionParams().get("supportedEncounterTypes");
+
+                if (supportedEncounterTypes != null) {
+                    for (Map.Entry<String, Object> entry : ((Map<String, Object>) supportedEncounterTypes).entrySet()) {
+                        // the first template that supports an encounter type wins
+                        if (!index.containsKey(entry.getKey())) {
+                            Object primaryEncounterRole = ((Map<String, Object>) entry.getValue()).get("primaryEncounterRole");
+                            index.put(entry.getKey(), (String) primaryEncounterRole);
                         }
                     }
                 }
             }
+            primaryEncounterRoleUuids = index;
         }
-
-        return null;
+        return primaryEncounterRoleUuids;
     }
 
     private Provider getFirstNonVoidedProvider(Encounter encounter) {
@@ -133,11 +150,4 @@ public class ParseEncounterToJson {
         }
         return null;
     }
-
-    private boolean verifyIfUserHasPermissionToDeleteAnEncounter(Encounter encounter, User authenticatedUser,
-                                                                 boolean canDelete) {
-        EncounterDomainWrapper encounterDomainWrapper = new EncounterDomainWrapper(encounter);
-        boolean userParticipatedInEncounter = encounterDomainWrapper.participatedInEncounter(authenticatedUser);
-        return canDelete || userParticipatedInEncounter;
-    }
 }
\ No newline at end of file
@@ -0,0 +1,137 @@
+package org.openmrs.module.coreapps.parser;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openmrs.ui.framework.SimpleObject;
+import org.openmrs.ui.framework.UiUtils;
+
+/**
+ * Builds the same {@link SimpleObject}s as {@link SimpleObject#fromObject(Object, UiUtils, String...)}, but the
+ * property paths are parsed once, when the template is created, and the getter for each property is only looked up
+ * once per class. Meant to be kept in a static field and reused, e.g.
+ * <pre>
+ * private static final SimpleObjectTemplate TEMPLATE = new SimpleObjectTemplate("id", "location", "providers.name");
+ * ...
+ * SimpleObject simple = TEMPLATE.toSimpleObject(obj, ui);
+ * </pre>
+ * Strings, numbers, booleans and enums are copied as they are, any other value is formatted with
+ * {@link UiUtils#format(Object)}, and collections along a nested path become lists of simple objects.
+ */
+public class SimpleObjectTemplate {
+
+    private final Node root = new Node();
+
+    public SimpleObjectTemplate(String... properties) {
+        for (String property : properties) {
+            Node node = root;
+            for (String name : property.split("\\.")) {
+                node = node.child(name);
+            }
+        }
+    }
+
+    /**
+     * @param obj the object to convert
+     * @param ui used to format values that are not strings, numbers, booleans or enums
+     * @return the simple object, or null if obj is null
+     */
+    public SimpleObject toSimpleObject(Object obj, UiUtils ui) {
+        return toSimpleObject(root, obj, ui);
+    }
+
+    private SimpleObject toSimpleObject(Node node, Object obj, UiUtils ui) {
+        if (obj == null) {
+            return null;
+        }
+
+        SimpleObject ret = new SimpleObject();
+        for (Map.Entry<String, Node> entry : node.children.entrySet()) {
+            Node child = entry.getValue();
+            Object value = child.getValue(obj);
+
+            if (child.isLeaf()) {
+                ret.put(entry.getKey(), isSimple(value) ? value : ui.format(value));
+            } else if (value instanceof Collection) {
+                List<SimpleObject> list = new ArrayList<SimpleObject>();
+                for (Object item : (Collection) value) {
+                    list.add(toSimpleObject(child, item, ui));
+                }
+                ret.put(entry.getKey(), list);
+            } else {
+                ret.put(entry.getKey(), toSimpleObject(child, value, ui));
+            }
+        }
+        return ret;
+    }
+
+    private boolean isSimple(Object value) {
+        return value == null || value instanceof String || value instanceof Number || value instanceof Boolean
+                || value instanceof Enum;
+    }
+
+    private static class Node {
+
+        private String name;
+
+        private final Map<String, Node> children = new LinkedHashMap<String, Node>();
+
+        private final Map<Class<?>, Method> getters = new ConcurrentHashMap<Class<?>, Method>();
+
+        Node child(String name) {
+            Node child = children.get(name);
+            if (child == null) {
+                child = new Node();
+                child.name = name;
+                children.put(name, child);
+            }
+            return child;
+        }
+
+        boolean isLeaf() {
+            return children.isEmpty();
+        }
+
+        Object getValue(Object obj) {
+            try {
+                return getGetter(obj.getClass()).invoke(obj);
+            }
+            catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot read property " + name + " of " + obj.getClass(), e);
+            }
+            catch (InvocationTargetException e) {
+                throw new IllegalStateException("Cannot read property " + name + " of " + obj.getClass(), e.getCause());
+            }
+        }
+
+        private Method getGetter(Class<?> clazz) {
+            Method getter = getters.get(clazz);
+            if (getter == null) {
+                try {
+                    for (PropertyDescriptor descriptor : Introspector.getBeanInfo(clazz).getPropertyDescriptors()) {
+                        if (descriptor.getName().equals(name)) {
+                            getter = descriptor.getReadMethod();
+                        }
+                    }
+                }
+                catch (IntrospectionException e) {
+                    throw new IllegalStateException("Cannot introspect " + clazz, e);
+                }
+                if (getter == null) {
+                    throw new IllegalArgumentException(clazz + " has no readable property " + name);
+                }
+                getters.put(clazz, getter);
+            }
+            return getter;
+        }
+    }
+}
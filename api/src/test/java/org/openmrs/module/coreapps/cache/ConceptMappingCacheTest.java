@@ -0,0 +1,56 @@
+package org.openmrs.module.coreapps.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.api.ConceptService;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ConceptMappingCacheTest {
+
+    private ConceptService conceptService;
+
+    private ConceptMappingCache conceptMappingCache;
+
+    @Before
+    public void setUp() {
+        conceptService = mock(ConceptService.class);
+        conceptMappingCache = new ConceptMappingCache();
+        conceptMappingCache.setConceptService(conceptService);
+    }
+
+    @Test
+    public void shouldOnlyLookUpEachMappingOnce() {
+        Concept concept = new Concept(7);
+        when(conceptService.getConceptByMapping("12345", "CIEL")).thenReturn(concept);
+        when(conceptService.getConcept(7)).thenReturn(concept);
+
+        assertSame(concept, conceptMappingCache.getConceptByMapping("12345", "CIEL"));
+        assertSame(concept, conceptMappingCache.getConceptByMapping("12345", "CIEL"));
+        verify(conceptService, times(1)).getConceptByMapping("12345", "CIEL");
+    }
+
+    @Test
+    public void shouldLookUpTheMappingAgainOnceCleared() {
+        Concept concept = new Concept(7);
+        when(conceptService.getConceptByMapping("12345", "CIEL")).thenReturn(concept);
+
+        conceptMappingCache.getConceptByMapping("12345", "CIEL");
+        conceptMappingCache.clear();
+        conceptMappingCache.getConceptByMapping("12345", "CIEL");
+        verify(conceptService, times(2)).getConceptByMapping("12345", "CIEL");
+    }
+
+    @Test
+    public void shouldNotCacheMissingMappings() {
+        assertNull(conceptMappingCache.getConceptByMapping("999", "CIEL"));
+        assertNull(conceptMappingCache.getConceptByMapping("999", "CIEL"));
+        verify(conceptService, times(2)).getConceptByMapping("999", "CIEL");
+    }
+}
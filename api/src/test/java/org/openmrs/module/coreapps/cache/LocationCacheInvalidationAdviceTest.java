@@ -0,0 +1,63 @@
+package org.openmrs.module.coreapps.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Location;
+import org.openmrs.LocationTag;
+import org.openmrs.api.LocationService;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+public class LocationCacheInvalidationAdviceTest {
+
+    private LocationCache locationCache;
+
+    private LocationCacheInvalidationAdvice advice;
+
+    @Before
+    public void setUp() {
+        locationCache = mock(LocationCache.class);
+        advice = new LocationCacheInvalidationAdvice();
+        advice.setLocationCache(locationCache);
+    }
+
+    @Test
+    public void shouldEvictASavedLocation() throws Throwable {
+        Location location = new Location(3);
+
+        advice.afterReturning(location, LocationService.class.getMethod("saveLocation", Location.class),
+                new Object[] { location }, null);
+
+        verify(locationCache).evict(3);
+    }
+
+    @Test
+    public void shouldEvictARetiredLocation() throws Throwable {
+        Location location = new Location(3);
+
+        advice.afterReturning(location, LocationService.class.getMethod("retireLocation", Location.class, String.class),
+                new Object[] { location, "duplicate" }, null);
+
+        verify(locationCache).evict(3);
+    }
+
+    @Test
+    public void shouldClearTheCacheWhenALocationTagIsSaved() throws Throwable {
+        LocationTag tag = new LocationTag();
+
+        advice.afterReturning(tag, LocationService.class.getMethod("saveLocationTag", LocationTag.class),
+                new Object[] { tag }, null);
+
+        verify(locationCache).clear();
+    }
+
+    @Test
+    public void shouldIgnoreReads() throws Throwable {
+        advice.afterReturning(null, LocationService.class.getMethod("getLocation", Integer.class), new Object[] { 3 },
+                null);
+
+        verifyZeroInteractions(locationCache);
+    }
+}
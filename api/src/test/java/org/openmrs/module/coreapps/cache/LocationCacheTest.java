@@ -0,0 +1,95 @@
+package org.openmrs.module.coreapps.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Location;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openmrs.api.LocationService;
+import org.openmrs.ui.framework.UiUtils;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LocationCacheTest {
+
+    private LocationService locationService;
+
+    private LocationCache locationCache;
+
+    private UiUtils uiUtils;
+
+    @Before
+    public void setUp() {
+        locationService = mock(LocationService.class);
+        locationCache = new LocationCache();
+        locationCache.setLocationService(locationService);
+
+        uiUtils = mock(UiUtils.class);
+        when(uiUtils.getLocale()).thenReturn(Locale.ENGLISH);
+        when(uiUtils.format(any())).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                Object arg = invocation.getArguments()[0];
+                return arg == null ? "" : ((Location) arg).getName() + " in " + uiUtils.getLocale();
+            }
+        });
+    }
+
+    @Test
+    public void shouldOnlyLoadAndFormatEachLocationOncePerLocale() {
+        when(locationService.getLocation(3)).thenReturn(createLocation(3, "Ward"));
+
+        assertEquals("Ward in en", locationCache.format(3, uiUtils));
+        assertEquals("Ward in en", locationCache.format(3, uiUtils));
+        verify(locationService, times(1)).getLocation(3);
+
+        when(uiUtils.getLocale()).thenReturn(Locale.FRENCH);
+        assertEquals("Ward in fr", locationCache.format(3, uiUtils));
+        verify(locationService, times(2)).getLocation(3);
+    }
+
+    @Test
+    public void shouldLoadLocationAgainOnceEvicted() {
+        when(locationService.getLocation(3)).thenReturn(createLocation(3, "Ward"));
+
+        locationCache.format(3, uiUtils);
+        locationCache.evict(3);
+        locationCache.format(3, uiUtils);
+        verify(locationService, times(2)).getLocation(3);
+    }
+
+    @Test
+    public void shouldNotCacheMissingLocations() {
+        assertEquals("", locationCache.format(4, uiUtils));
+        assertEquals("", locationCache.format(4, uiUtils));
+        verify(locationService, times(2)).getLocation(4);
+    }
+
+    @Test
+    public void lruCacheShouldEvictLeastRecentlyUsedEntryWhenFull() {
+        LruCache<Integer, String> cache = new LruCache<Integer, String>(2);
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.get(1);
+        cache.put(3, "three");
+
+        assertSame("one", cache.get(1));
+        assertNull(cache.get(2));
+        assertSame("three", cache.get(3));
+    }
+
+    private Location createLocation(Integer locationId, String name) {
+        Location location = new Location(locationId);
+        location.setName(name);
+        return location;
+    }
+}
@@ -0,0 +1,71 @@
+package org.openmrs.module.coreapps.cache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Patient;
+import org.openmrs.Visit;
+import org.openmrs.api.VisitService;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+public class VisitListCacheInvalidationAdviceTest {
+
+    private VisitListCache visitListCache;
+
+    private VisitListCacheInvalidationAdvice advice;
+
+    private Visit visit;
+
+    @Before
+    public void setUp() {
+        visitListCache = mock(VisitListCache.class);
+        advice = new VisitListCacheInvalidationAdvice();
+        advice.setVisitListCache(visitListCache);
+
+        visit = new Visit();
+        visit.setPatient(new Patient(7));
+    }
+
+    @After
+    public void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void shouldMarkThePatientChangedAgainAfterTheTransactionCommits() throws Throwable {
+        TransactionSynchronizationManager.initSynchronization();
+
+        advice.afterReturning(visit, VisitService.class.getMethod("saveVisit", Visit.class), new Object[] { visit }, null);
+        verify(visitListCache, times(1)).patientChanged(7);
+
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        for (TransactionSynchronization synchronization : synchronizations) {
+            synchronization.afterCommit();
+        }
+        verify(visitListCache, times(2)).patientChanged(7);
+    }
+
+    @Test
+    public void shouldMarkThePatientChangedOnceOutsideOfATransaction() throws Throwable {
+        advice.afterReturning(visit, VisitService.class.getMethod("saveVisit", Visit.class), new Object[] { visit }, null);
+
+        verify(visitListCache, times(1)).patientChanged(7);
+    }
+
+    @Test
+    public void shouldIgnoreReads() throws Throwable {
+        advice.afterReturning(visit, VisitService.class.getMethod("getVisit", Integer.class), new Object[] { 1 }, null);
+
+        verifyZeroInteractions(visitListCache);
+    }
+}
@@ -0,0 +1,69 @@
+package org.openmrs.module.coreapps.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Patient;
+import org.openmrs.Role;
+import org.openmrs.User;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class VisitListCacheTest {
+
+    private VisitListCache visitListCache;
+
+    private User user;
+
+    @Before
+    public void setUp() {
+        visitListCache = new VisitListCache();
+        user = new User();
+        user.addRole(new Role("Clinician"));
+    }
+
+    @Test
+    public void shouldOnlyInvalidateTheVisitListOfThePatientThatChanged() {
+        Patient patient = new Patient(1);
+        Patient otherPatient = new Patient(2);
+
+        String key = visitListCache.getKey(patient, user, Locale.ENGLISH);
+        String otherKey = visitListCache.getKey(otherPatient, user, Locale.ENGLISH);
+        visitListCache.put(key, "<ul>1</ul>");
+        visitListCache.put(otherKey, "<ul>2</ul>");
+
+        visitListCache.patientChanged(1);
+
+        assertNull(visitListCache.get(visitListCache.getKey(patient, user, Locale.ENGLISH)));
+        assertEquals("<ul>2</ul>", visitListCache.get(visitListCache.getKey(otherPatient, user, Locale.ENGLISH)));
+    }
+
+    @Test
+    public void shouldUseDifferentKeysForDifferentLocalesAndRoles() {
+        Patient patient = new Patient(1);
+        User otherUser = new User();
+        otherUser.addRole(new Role("Clerk"));
+
+        String key = visitListCache.getKey(patient, user, Locale.ENGLISH);
+
+        assertFalse(key.equals(visitListCache.getKey(patient, user, Locale.FRENCH)));
+        assertFalse(key.equals(visitListCache.getKey(patient, otherUser, Locale.ENGLISH)));
+    }
+
+    @Test
+    public void shouldNotGoBackToAStaleVersionWhenThePatientVersionIsEvicted() {
+        Patient patient = new Patient(1);
+        visitListCache.put(visitListCache.getKey(patient, user, Locale.ENGLISH), "<ul>stale</ul>");
+        visitListCache.patientChanged(1);
+
+        // forget the version of patient 1
+        for (int patientId = 2; patientId <= 10001; patientId++) {
+            visitListCache.patientChanged(patientId);
+        }
+
+        assertNull(visitListCache.get(visitListCache.getKey(patient, user, Locale.ENGLISH)));
+    }
+}
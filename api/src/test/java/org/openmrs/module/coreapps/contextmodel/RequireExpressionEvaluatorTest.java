@@ -0,0 +1,86 @@
+package org.openmrs.module.coreapps.contextmodel;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Patient;
+import org.openmrs.module.appframework.context.AppContextModel;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class RequireExpressionEvaluatorTest {
+
+    private AppContextModel contextModel;
+
+    private Map<String, Object> visit;
+
+    @Before
+    public void setUp() {
+        Patient patient = new Patient();
+        patient.setDead(true);
+
+        visit = new HashMap<String, Object>();
+        visit.put("active", true);
+        visit.put("admitted", false);
+
+        contextModel = new AppContextModel();
+        contextModel.put("patient", new PatientContextModel(patient));
+        contextModel.put("visit", visit);
+    }
+
+    @Test
+    public void shouldEvaluateSimpleExpressionsInJava() {
+        RequireExpressionEvaluator evaluator = new RequireExpressionEvaluator(contextModel);
+
+        assertThat(evaluator.evaluate("visit.active"), is(true));
+        assertThat(evaluator.evaluate("patient.person.dead"), is(true));
+        assertThat(evaluator.evaluate("!patient.person.dead"), is(false));
+        assertThat(evaluator.evaluate("visit.active && !visit.admitted"), is(true));
+        assertThat(evaluator.evaluate("!(visit.admitted || patient.person.dead) && visit.active"), is(false));
+        assertThat(evaluator.evaluate("visit.admitted || visit.active && patient.person.dead"), is(true));
+    }
+
+    @Test
+    public void shouldNotMeetSimpleExpressionsThatWouldFailAsScripts() {
+        contextModel.put("visit", null);
+        RequireExpressionEvaluator evaluator = new RequireExpressionEvaluator(contextModel);
+
+        assertThat(evaluator.evaluate("visit.active"), is(false));
+        assertThat(evaluator.evaluate("!visit.active"), is(false));
+        assertThat(evaluator.evaluate("sessionLocation.visitLocation"), is(false));
+    }
+
+    @Test
+    public void shouldMeetBlankExpressions() {
+        RequireExpressionEvaluator evaluator = new RequireExpressionEvaluator(contextModel);
+
+        assertThat(evaluator.evaluate(null), is(true));
+        assertThat(evaluator.evaluate(" "), is(true));
+    }
+
+    @Test
+    public void shouldLeaveExpressionsCallingFunctionsToTheAppFrameworkService() {
+        RequireExpressionEvaluator evaluator = new RequireExpressionEvaluator(contextModel);
+
+        assertThat(evaluator.evaluate("hasMemberWithProperty(patient.person, 'dead', true)"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldOnlyCompileSimpleExpressionsToJava() {
+        assertThat(RequireExpressionEvaluator.compile("visit.active && !(patient.person.dead)"),
+                instanceOf(RequireExpressionEvaluator.SimpleExpression.class));
+        assertThat(RequireExpressionEvaluator.compile("visit.active == true"),
+                instanceOf(RequireExpressionEvaluator.ScriptExpression.class));
+        assertThat(RequireExpressionEvaluator.compile("patient.person.gender != 'M'"),
+                instanceOf(RequireExpressionEvaluator.ScriptExpression.class));
+        assertThat(RequireExpressionEvaluator.compile("visit.active &&"),
+                instanceOf(RequireExpressionEvaluator.ScriptExpression.class));
+        assertThat(RequireExpressionEvaluator.compile("true"),
+                instanceOf(RequireExpressionEvaluator.ScriptExpression.class));
+    }
+}
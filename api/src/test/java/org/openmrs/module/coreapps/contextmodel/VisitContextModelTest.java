@@ -0,0 +1,31 @@
+package org.openmrs.module.coreapps.contextmodel;
+
+import org.junit.Test;
+import org.openmrs.module.emrapi.visit.VisitDomainWrapper;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class VisitContextModelTest {
+
+    @Test
+    public void shouldOnlyWorkOutWhetherTheVisitIsAdmittedOnceItIsRead() {
+        VisitDomainWrapper visit = mock(VisitDomainWrapper.class);
+        when(visit.isAdmitted()).thenReturn(true);
+        when(visit.isOpen()).thenReturn(true);
+
+        VisitContextModel contextModel = new VisitContextModel(visit);
+
+        assertThat(contextModel.isActive(), is(true));
+        verify(visit, never()).isAdmitted();
+
+        assertThat(contextModel.isAdmitted(), is(true));
+        assertThat(contextModel.isAdmitted(), is(true));
+        verify(visit, times(1)).isAdmitted();
+    }
+}
@@ -0,0 +1,168 @@
+package org.openmrs.module.coreapps.db.hibernate;
+
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.Encounter;
+import org.openmrs.EncounterProvider;
+import org.openmrs.Obs;
+import org.openmrs.Person;
+import org.openmrs.Visit;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.coreapps.db.CoreAppsDAO;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class HibernateCoreAppsDAOTest extends BaseModuleContextSensitiveTest {
+
+    @Autowired
+    private CoreAppsDAO coreAppsDAO;
+
+    @Autowired
+    private SessionFactory sessionFactory;
+
+    private Visit visit;
+
+    @Before
+    public void setUp() throws Exception {
+        executeDataSet("coreAppsDAOTestDataset.xml");
+        visit = Context.getVisitService().getVisit(1001);
+    }
+
+    @After
+    public void tearDown() {
+        sessionFactory.getStatistics().setStatisticsEnabled(false);
+    }
+
+    @Test
+    public void shouldReturnTheNonVoidedEncountersOfAVisitMostRecentFirst() {
+        assertThat(getEncounterIds(coreAppsDAO.getEncountersWithDetails(visit, 0, null)), is(asList(1004, 1002, 1001)));
+        assertThat(coreAppsDAO.getEncounterCount(visit), is(3));
+    }
+
+    @Test
+    public void shouldReturnTheRequestedPageOfEncounters() {
+        assertThat(getEncounterIds(coreAppsDAO.getEncountersWithDetails(visit, 1, 1)), is(asList(1002)));
+        assertThat(getEncounterIds(coreAppsDAO.getEncountersWithDetails(visit, 2, 5)), is(asList(1001)));
+        assertTrue(coreAppsDAO.getEncountersWithDetails(visit, 3, 5).isEmpty());
+    }
+
+    @Test
+    public void shouldLoadTheDetailsOfTheEncountersWithoutFurtherQueries() {
+        Context.flushSession();
+        Context.clearSession();
+        visit = Context.getVisitService().getVisit(1001);
+        Statistics statistics = sessionFactory.getStatistics();
+        statistics.setStatisticsEnabled(true);
+
+        List<Encounter> encounters = coreAppsDAO.getEncountersWithDetails(visit, 0, null);
+        statistics.clear();
+
+        for (Encounter encounter : encounters) {
+            assertTrue(Hibernate.isInitialized(encounter.getEncounterType()));
+            assertTrue(Hibernate.isInitialized(encounter.getLocation()));
+            assertTrue(Hibernate.isInitialized(encounter.getEncounterProviders()));
+            encounter.getEncounterType().getName();
+            encounter.getLocation().getName();
+        }
+        EncounterProvider encounterProvider = encounters.get(1).getEncounterProviders().iterator().next();
+        assertThat(encounterProvider.getEncounterRole().getName(), is("Clinician"));
+        assertThat(encounterProvider.getProvider().getPerson().getPersonName().getGivenName(), is("Nurse"));
+
+        assertThat(statistics.getPrepareStatementCount(), is(0L));
+    }
+
+    @Test
+    public void shouldIssueAsManyQueriesForAPageOfOneEncounterAsForAllOfThem() {
+        Statistics statistics = sessionFactory.getStatistics();
+        statistics.setStatisticsEnabled(true);
+
+        long forOneEncounter = countStatementsToGetEncounters(statistics, 1, 1);
+        long forAllEncounters = countStatementsToGetEncounters(statistics, 0, null);
+
+        assertThat(forAllEncounters, is(forOneEncounter));
+    }
+
+    @Test
+    public void shouldFindTheEncountersAUserCreatedOrWasAProviderFor() {
+        assertThat(coreAppsDAO.getEncounterIdsParticipatedIn(visit, Context.getUserService().getUser(1001)),
+                is(new HashSet<Integer>(asList(1002))));
+        assertThat(coreAppsDAO.getEncounterIdsParticipatedIn(visit, Context.getUserService().getUser(1)),
+                is(new HashSet<Integer>(asList(1001, 1002, 1003, 1004))));
+    }
+
+    @Test
+    public void shouldFindTheLatestNonVoidedObsOfEachConcept() {
+        Person person = Context.getPersonService().getPerson(1001);
+        Concept weight = Context.getConceptService().getConcept(5089);
+        Concept cd4 = Context.getConceptService().getConcept(5497);
+        Concept nonCoded = Context.getConceptService().getConcept(19);
+
+        Map<Integer, Obs> latestObs = coreAppsDAO.getLatestObsByConcept(person, asList(weight, cd4, nonCoded));
+
+        assertThat(latestObs.size(), is(2));
+        // the latest weight was voided
+        assertThat(latestObs.get(5089).getObsId(), is(1002));
+        // both CD4 counts were taken at the same time
+        assertThat(latestObs.get(5497).getObsId(), is(1006));
+        assertThat(latestObs.get(19), is(nullValue()));
+    }
+
+    @Test
+    public void shouldFindNoLatestObsWithoutConcepts() {
+        Person person = Context.getPersonService().getPerson(1001);
+
+        assertTrue(coreAppsDAO.getLatestObsByConcept(person, Collections.<Concept> emptyList()).isEmpty());
+    }
+
+    @Test
+    public void shouldCountTheNonVoidedValueTextsOfAConceptIgnoringCaseAndWhitespace() {
+        Map<String, Integer> counts = coreAppsDAO.getValueTextCounts(Context.getConceptService().getConcept(19));
+
+        assertThat(counts.get("malaria"), is(2));
+        assertThat(counts.get("fever"), is(1));
+    }
+
+    @Test
+    public void shouldFindTheNonVoidedObsWithAnyOfTheValueTexts() {
+        Concept nonCoded = Context.getConceptService().getConcept(19);
+
+        assertThat(coreAppsDAO.getObsIdsWithValueTexts(nonCoded, asList("MALARIA", " fever ")),
+                is(asList(1010, 1011, 1013)));
+        assertTrue(coreAppsDAO.getObsIdsWithValueTexts(nonCoded, Collections.<String> emptyList()).isEmpty());
+    }
+
+    private long countStatementsToGetEncounters(Statistics statistics, int offset, Integer limit) {
+        Context.flushSession();
+        Context.clearSession();
+        visit = Context.getVisitService().getVisit(1001);
+        statistics.clear();
+
+        coreAppsDAO.getEncountersWithDetails(visit, offset, limit);
+        return statistics.getPrepareStatementCount();
+    }
+
+    private List<Integer> getEncounterIds(List<Encounter> encounters) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (Encounter encounter : encounters) {
+            ids.add(encounter.getEncounterId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,101 @@
+package org.openmrs.module.coreapps.diagnosis;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.openmrs.Concept;
+import org.openmrs.ConceptName;
+import org.openmrs.Obs;
+import org.openmrs.api.ConceptService;
+import org.openmrs.api.ObsService;
+import org.openmrs.module.emrapi.diagnosis.CodedOrFreeTextAnswer;
+import org.openmrs.module.emrapi.diagnosis.Diagnosis;
+import org.openmrs.module.emrapi.diagnosis.DiagnosisService;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BulkDiagnosisChunkCoderTest {
+
+    private BulkDiagnosisChunkCoder chunkCoder;
+
+    private ObsService obsService;
+
+    private ConceptService conceptService;
+
+    private DiagnosisService diagnosisService;
+
+    @Before
+    public void setUp() {
+        obsService = mock(ObsService.class);
+        conceptService = mock(ConceptService.class);
+        diagnosisService = mock(DiagnosisService.class);
+
+        chunkCoder = new BulkDiagnosisChunkCoder();
+        chunkCoder.setObsService(obsService);
+        chunkCoder.setConceptService(conceptService);
+        chunkCoder.setDiagnosisService(diagnosisService);
+    }
+
+    @Test
+    public void shouldCodeTheObsWithTheDiagnosesLoadedAgain() {
+        Obs nonCoded = new Obs(1);
+        Obs voided = new Obs(2);
+        voided.setVoided(true);
+        when(obsService.getObs(1)).thenReturn(nonCoded);
+        when(obsService.getObs(2)).thenReturn(voided);
+
+        ConceptName loadedBefore = conceptName(840);
+        ConceptName loadedAgain = conceptName(840);
+        when(conceptService.getConceptName(840)).thenReturn(loadedAgain);
+        Diagnosis diagnosis = new Diagnosis(new CodedOrFreeTextAnswer(loadedBefore), Diagnosis.Order.PRIMARY);
+        diagnosis.setCertainty(Diagnosis.Certainty.CONFIRMED);
+        when(diagnosisService.codeNonCodedDiagnosis(eq(nonCoded), anyListOf(Diagnosis.class))).thenReturn(
+                asList(new Obs()));
+
+        Map<Integer, List<Diagnosis>> mappings = new LinkedHashMap<Integer, List<Diagnosis>>();
+        mappings.put(1, asList(diagnosis));
+        mappings.put(2, asList(diagnosis));
+        mappings.put(3, asList(diagnosis));
+        List<BulkDiagnosisChunkCoder.Outcome> outcomes = chunkCoder.codeChunk(asList(1, 2, 3), mappings);
+
+        assertThat(outcomes, is(asList(BulkDiagnosisChunkCoder.Outcome.CODED, BulkDiagnosisChunkCoder.Outcome.SKIPPED,
+                BulkDiagnosisChunkCoder.Outcome.SKIPPED)));
+
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        verify(diagnosisService).codeNonCodedDiagnosis(eq(nonCoded), captor.capture());
+        Diagnosis coded = (Diagnosis) captor.getValue().get(0);
+        assertSame(loadedAgain, coded.getDiagnosis().getSpecificCodedAnswer());
+        assertThat(coded.getOrder(), is(Diagnosis.Order.PRIMARY));
+        assertThat(coded.getCertainty(), is(Diagnosis.Certainty.CONFIRMED));
+    }
+
+    @Test
+    public void shouldReportObsThatWereNotCoded() {
+        when(obsService.getObs(1)).thenReturn(new Obs(1));
+        Diagnosis diagnosis = new Diagnosis(new CodedOrFreeTextAnswer("Headache"), Diagnosis.Order.SECONDARY);
+
+        Map<Integer, List<Diagnosis>> mappings = new LinkedHashMap<Integer, List<Diagnosis>>();
+        mappings.put(1, asList(diagnosis));
+
+        assertThat(chunkCoder.codeChunk(asList(1), mappings), is(asList(BulkDiagnosisChunkCoder.Outcome.NOT_CODED)));
+    }
+
+    private ConceptName conceptName(Integer id) {
+        ConceptName conceptName = new ConceptName(id);
+        conceptName.setName("Malaria");
+        conceptName.setConcept(new Concept(id));
+        return conceptName;
+    }
+}
@@ -0,0 +1,126 @@
+package org.openmrs.module.coreapps.diagnosis;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openmrs.Concept;
+import org.openmrs.api.db.hibernate.DbSession;
+import org.openmrs.api.db.hibernate.DbSessionFactory;
+import org.openmrs.module.coreapps.db.CoreAppsDAO;
+import org.openmrs.module.emrapi.EmrApiProperties;
+import org.openmrs.module.emrapi.diagnosis.Diagnosis;
+import org.openmrs.module.emrapi.diagnosis.DiagnosisMetadata;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BulkDiagnosisCoderTest {
+
+    private BulkDiagnosisCoder coder;
+
+    private BulkDiagnosisChunkCoder chunkCoder;
+
+    private DbSession session;
+
+    private NonCodedDiagnosisMatcher nonCodedDiagnosisMatcher;
+
+    @Before
+    public void setUp() {
+        chunkCoder = mock(BulkDiagnosisChunkCoder.class);
+        session = mock(DbSession.class);
+        DbSessionFactory sessionFactory = mock(DbSessionFactory.class);
+        when(sessionFactory.getCurrentSession()).thenReturn(session);
+        nonCodedDiagnosisMatcher = mock(NonCodedDiagnosisMatcher.class);
+
+        coder = new BulkDiagnosisCoder();
+        coder.setChunkCoder(chunkCoder);
+        coder.setSessionFactory(sessionFactory);
+        coder.setNonCodedDiagnosisMatcher(nonCodedDiagnosisMatcher);
+    }
+
+    @Test
+    public void shouldCodeTheObsInChunks() {
+        Map<Integer, List<Diagnosis>> mappings = new LinkedHashMap<Integer, List<Diagnosis>>();
+        for (int i = 1; i <= BulkDiagnosisCoder.CHUNK_SIZE + 1; i++) {
+            mappings.put(i, new ArrayList<Diagnosis>());
+        }
+        when(chunkCoder.codeChunk(anyCollectionOf(Integer.class), any(Map.class))).thenAnswer(
+                new Answer<List<BulkDiagnosisChunkCoder.Outcome>>() {
+
+                    @Override
+                    public List<BulkDiagnosisChunkCoder.Outcome> answer(InvocationOnMock invocation) {
+                        List<BulkDiagnosisChunkCoder.Outcome> outcomes = new ArrayList<BulkDiagnosisChunkCoder.Outcome>();
+                        for (Object obsId : (Collection) invocation.getArguments()[0]) {
+                            outcomes.add(BulkDiagnosisChunkCoder.Outcome.CODED);
+                        }
+                        return outcomes;
+                    }
+                });
+
+        BulkDiagnosisCoder.Progress progress = new BulkDiagnosisCoder.Progress("job", mappings.size());
+        coder.runJob(progress, mappings);
+
+        assertThat(progress.getProcessed(), is(BulkDiagnosisCoder.CHUNK_SIZE + 1));
+        assertThat(progress.getCoded(), is(BulkDiagnosisCoder.CHUNK_SIZE + 1));
+        assertThat(progress.isFinished(), is(true));
+        verify(chunkCoder, times(2)).codeChunk(anyCollectionOf(Integer.class), any(Map.class));
+        verify(session, times(2)).clear();
+        verify(nonCodedDiagnosisMatcher).invalidate();
+    }
+
+    @Test
+    public void shouldCodeTheObsOfAFailedChunkOneByOne() {
+        Map<Integer, List<Diagnosis>> mappings = new LinkedHashMap<Integer, List<Diagnosis>>();
+        mappings.put(1, new ArrayList<Diagnosis>());
+        mappings.put(2, new ArrayList<Diagnosis>());
+        mappings.put(3, new ArrayList<Diagnosis>());
+        when(chunkCoder.codeChunk(asList(1, 2, 3), mappings)).thenThrow(new IllegalStateException());
+        when(chunkCoder.codeChunk(asList(1), mappings)).thenReturn(asList(BulkDiagnosisChunkCoder.Outcome.CODED));
+        when(chunkCoder.codeChunk(asList(2), mappings)).thenThrow(new IllegalStateException());
+        when(chunkCoder.codeChunk(asList(3), mappings)).thenReturn(asList(BulkDiagnosisChunkCoder.Outcome.SKIPPED));
+
+        BulkDiagnosisCoder.Progress progress = new BulkDiagnosisCoder.Progress("job", mappings.size());
+        coder.runJob(progress, mappings);
+
+        assertThat(progress.getFailed(), is(1));
+        assertThat(progress.getSkipped(), is(1));
+        assertThat(progress.getCoded(), is(1));
+        assertThat(progress.getProcessed(), is(3));
+    }
+
+    @Test
+    public void shouldMapAllObsWithTheGivenTexts() {
+        Concept nonCoded = new Concept(1);
+        DiagnosisMetadata diagnosisMetadata = mock(DiagnosisMetadata.class);
+        when(diagnosisMetadata.getNonCodedDiagnosisConcept()).thenReturn(nonCoded);
+        EmrApiProperties emrApiProperties = mock(EmrApiProperties.class);
+        when(emrApiProperties.getDiagnosisMetadata()).thenReturn(diagnosisMetadata);
+        CoreAppsDAO coreAppsDAO = mock(CoreAppsDAO.class);
+        when(coreAppsDAO.getObsIdsWithValueTexts(nonCoded, asList("Malaria", "malarya"))).thenReturn(asList(5, 6));
+        coder.setEmrApiProperties(emrApiProperties);
+        coder.setCoreAppsDAO(coreAppsDAO);
+        List<Diagnosis> diagnoses = new ArrayList<Diagnosis>();
+
+        Map<Integer, List<Diagnosis>> mappings = coder.getMappings(asList("Malaria", "malarya"), diagnoses);
+
+        assertThat(new ArrayList<Integer>(mappings.keySet()), is(asList(5, 6)));
+        assertThat(mappings.get(5), is(diagnoses));
+        assertThat(mappings.get(6), is(diagnoses));
+        assertThat(coder.getProgress("other"), is(nullValue()));
+    }
+}
@@ -0,0 +1,99 @@
+package org.openmrs.module.coreapps.diagnosis;
+
+import org.apache.commons.beanutils.PropertyUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.ConceptMap;
+import org.openmrs.ConceptMapType;
+import org.openmrs.ConceptName;
+import org.openmrs.ConceptReferenceTerm;
+import org.openmrs.ConceptSearchResult;
+import org.openmrs.ConceptSource;
+import org.openmrs.module.appui.TestUiUtils;
+import org.openmrs.ui.framework.SimpleObject;
+import org.openmrs.ui.framework.UiUtils;
+
+import java.util.List;
+import java.util.Locale;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class ConceptSearchResultSerializerTest {
+
+    private UiUtils ui;
+
+    private Concept concept;
+
+    private ConceptName synonym;
+
+    private ConceptSource source;
+
+    @Before
+    public void setUp() {
+        ui = new TestUiUtils();
+
+        ConceptName preferredName = new ConceptName("Malaria", Locale.ENGLISH);
+        preferredName.setId(1);
+        preferredName.setLocalePreferred(true);
+        synonym = new ConceptName("Paludism", Locale.ENGLISH);
+        synonym.setId(2);
+
+        source = new ConceptSource();
+        source.setName("ICD-10-WHO");
+        ConceptMapType sameAs = new ConceptMapType();
+        sameAs.setName("SAME-AS");
+
+        concept = new Concept(3);
+        concept.addName(preferredName);
+        concept.addName(synonym);
+        concept.addConceptMapping(new ConceptMap(new ConceptReferenceTerm(source, "B54", "Unspecified malaria"), sameAs));
+    }
+
+    @Test
+    public void shouldSerializeResultsLikeSimpleObjectFromObjectDid() throws Exception {
+        ConceptSearchResultSerializer serializer = new ConceptSearchResultSerializer();
+
+        ConceptSearchResult withName = new ConceptSearchResult("palu", concept, synonym);
+        ConceptSearchResult withoutName = new ConceptSearchResult(null, concept, null);
+
+        assertThat(serializer.simplify(withName, ui, Locale.ENGLISH).toJson(),
+                is(simplifyByIntrospection(withName, Locale.ENGLISH).toJson()));
+        assertThat(serializer.simplify(withoutName, ui, Locale.ENGLISH).toJson(),
+                is(simplifyByIntrospection(withoutName, Locale.ENGLISH).toJson()));
+    }
+
+    @Test
+    public void shouldConvertTheMappingsAgainOnceCleared() {
+        ConceptSearchResultSerializer serializer = new ConceptSearchResultSerializer();
+        ConceptSearchResult result = new ConceptSearchResult("mal", concept, null);
+
+        serializer.simplify(result, ui, Locale.ENGLISH);
+        source.setName("ICD-10");
+        assertThat(getSourceName(serializer.simplify(result, ui, Locale.ENGLISH)), is((Object) "ICD-10-WHO"));
+
+        serializer.clear();
+        assertThat(getSourceName(serializer.simplify(result, ui, Locale.ENGLISH)), is((Object) "ICD-10"));
+    }
+
+    private Object getSourceName(SimpleObject simple) {
+        SimpleObject simpleConcept = (SimpleObject) simple.get("concept");
+        SimpleObject mapping = (SimpleObject) ((List) simpleConcept.get("conceptMappings")).get(0);
+        SimpleObject term = (SimpleObject) mapping.get("conceptReferenceTerm");
+        return ((SimpleObject) term.get("conceptSource")).get("name");
+    }
+
+    /**
+     * How DiagnosesFragmentController#simplify used to serialize results, before ConceptSearchResultSerializer
+     */
+    private SimpleObject simplifyByIntrospection(ConceptSearchResult result, Locale locale) throws Exception {
+        SimpleObject simple = SimpleObject.fromObject(result, ui, "word", "conceptName.id", "conceptName.uuid",
+                "conceptName.conceptNameType", "conceptName.name", "concept.id", "concept.uuid",
+                "concept.conceptMappings.conceptMapType", "concept.conceptMappings.conceptReferenceTerm.code",
+                "concept.conceptMappings.conceptReferenceTerm.name",
+                "concept.conceptMappings.conceptReferenceTerm.conceptSource.name");
+        PropertyUtils.setProperty(simple, "concept.preferredName", result.getConcept().getPreferredName(locale).getName());
+        return simple;
+    }
+}
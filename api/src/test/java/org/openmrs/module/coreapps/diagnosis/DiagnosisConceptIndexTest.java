@@ -0,0 +1,204 @@
+package org.openmrs.module.coreapps.diagnosis;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.ConceptMap;
+import org.openmrs.ConceptName;
+import org.openmrs.ConceptNameType;
+import org.openmrs.ConceptReferenceTerm;
+import org.openmrs.ConceptSearchResult;
+import org.openmrs.ConceptSource;
+import org.openmrs.api.ConceptService;
+import org.openmrs.module.emrapi.concept.EmrConceptService;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DiagnosisConceptIndexTest {
+
+    private DiagnosisConceptIndex index;
+
+    private ConceptService conceptService;
+
+    private EmrConceptService emrConceptService;
+
+    private Concept diagnosisSet;
+
+    private ConceptSource icd10;
+
+    private Concept malaria;
+
+    private Concept cerebralMalaria;
+
+    private Concept fever;
+
+    @Before
+    public void setUp() {
+        conceptService = mock(ConceptService.class);
+        emrConceptService = mock(EmrConceptService.class);
+        index = new DiagnosisConceptIndex();
+        index.setConceptService(conceptService);
+        index.setEmrConceptService(emrConceptService);
+
+        icd10 = new ConceptSource();
+        icd10.setConceptSourceId(1);
+
+        malaria = createConcept(10, name(100, "Malaria", Locale.ENGLISH), name(101, "Paludisme", Locale.FRENCH));
+        ConceptMap mapping = new ConceptMap();
+        mapping.setConceptReferenceTerm(new ConceptReferenceTerm(icd10, "B54", null));
+        malaria.addConceptMapping(mapping);
+        cerebralMalaria = createConcept(11, name(110, "Cerebral malaria", Locale.ENGLISH));
+        fever = createConcept(12, name(120, "Fever", Locale.ENGLISH));
+
+        diagnosisSet = new Concept(1);
+        diagnosisSet.addSetMember(malaria);
+        diagnosisSet.addSetMember(cerebralMalaria);
+        diagnosisSet.addSetMember(fever);
+    }
+
+    @Test
+    public void shouldRankNamesStartingWithTheQueryFirst() {
+        List<ConceptSearchResult> results = search("mal", Locale.ENGLISH);
+
+        assertThat(results.size(), is(2));
+        assertThat(results.get(0).getConcept(), is(malaria));
+        assertThat(results.get(0).getConceptName().getName(), is("Malaria"));
+        assertThat(results.get(1).getConcept(), is(cerebralMalaria));
+    }
+
+    @Test
+    public void shouldRequireEveryWordOfTheQueryToMatch() {
+        List<ConceptSearchResult> results = search("malaria cere", Locale.ENGLISH);
+
+        assertThat(results.size(), is(1));
+        assertThat(results.get(0).getConcept(), is(cerebralMalaria));
+    }
+
+    @Test
+    public void shouldOnlyMatchNamesInTheLocale() {
+        assertThat(search("palu", Locale.ENGLISH).size(), is(0));
+        assertThat(search("palu", Locale.FRANCE).get(0).getConcept(), is(malaria));
+    }
+
+    @Test
+    public void shouldFindConceptsByReferenceTermCode() {
+        List<ConceptSearchResult> results = search("b54", Locale.ENGLISH);
+
+        assertThat(results.size(), is(1));
+        assertThat(results.get(0).getConcept(), is(malaria));
+        assertThat(results.get(0).getConceptName(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldReindexChangedConcepts() {
+        search("fev", Locale.ENGLISH);
+
+        ConceptName synonym = name(121, "Pyrexia", Locale.ENGLISH);
+        synonym.setConceptNameType(null);
+        fever.addName(synonym);
+        index.conceptChanged(fever, false);
+
+        assertThat(search("pyr", Locale.ENGLISH).get(0).getConcept(), is(fever));
+    }
+
+    @Test
+    public void shouldIndexRetiredConceptsAgainOnceUnretired() {
+        search("fev", Locale.ENGLISH);
+
+        fever.setRetired(true);
+        index.conceptChanged(fever, false);
+
+        assertThat(search("fev", Locale.ENGLISH).size(), is(0));
+
+        fever.setRetired(false);
+        index.conceptChanged(fever, false);
+
+        assertThat(search("fev", Locale.ENGLISH).get(0).getConcept(), is(fever));
+    }
+
+    @Test
+    public void shouldUseTheEmrConceptServiceWithoutDiagnosisSets() {
+        index.search("mal", Locale.ENGLISH, Collections.<Concept> emptyList(), asList(icd10));
+
+        verify(emrConceptService).conceptSearch("mal", Locale.ENGLISH, null, Collections.<Concept> emptyList(),
+                asList(icd10), Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void shouldOnlyLoadTheConceptsOfTheRequestedPage() {
+        DiagnosisSearchResults page = index.search("mal", Locale.ENGLISH, asList(diagnosisSet), asList(icd10), 1, 1);
+
+        assertThat(page.getResults().size(), is(1));
+        assertThat(page.getResults().get(0).getConcept(), is(cerebralMalaria));
+        assertThat(page.getTotalCount(), is(2));
+        assertThat(page.hasMore(), is(false));
+        verify(conceptService, never()).getConcept(malaria.getConceptId());
+    }
+
+    @Test
+    public void shouldAskTheEmrConceptServiceForOneMoreResultThanThePageSize() {
+        when(emrConceptService.conceptSearch("mal", Locale.ENGLISH, null, Collections.<Concept> emptyList(),
+                asList(icd10), 2)).thenReturn(asList(new ConceptSearchResult(null, malaria, null),
+                new ConceptSearchResult(null, cerebralMalaria, null)));
+
+        DiagnosisSearchResults page = index.search("mal", Locale.ENGLISH, Collections.<Concept> emptyList(),
+                asList(icd10), 0, 1);
+
+        assertThat(page.getResults().size(), is(1));
+        assertThat(page.getTotalCount(), is(nullValue()));
+        assertThat(page.hasMore(), is(true));
+    }
+
+    @Test
+    public void shouldFindCandidatesForMisspelledText() {
+        List<DiagnosisCandidate> candidates = index.findCandidates("Malarya", Locale.ENGLISH, asList(diagnosisSet),
+                asList(icd10), 5);
+
+        assertThat(candidates.get(0).getResult().getConcept(), is(malaria));
+        assertThat(candidates.get(0).getResult().getConceptName().getName(), is("Malaria"));
+        for (DiagnosisCandidate candidate : candidates) {
+            assertThat(candidate.getResult().getConcept() == fever, is(false));
+        }
+    }
+
+    @Test
+    public void shouldAddSimilarNamesAfterMatchingOnesInAFuzzySearch() {
+        assertThat(search("malarya", Locale.ENGLISH).size(), is(0));
+
+        DiagnosisSearchResults results = index.search("malarya", Locale.ENGLISH, asList(diagnosisSet), asList(icd10), 0,
+                10, true);
+
+        assertThat(results.getResults().get(0).getConcept(), is(malaria));
+    }
+
+    private List<ConceptSearchResult> search(String query, Locale locale) {
+        return index.search(query, locale, asList(diagnosisSet), asList(icd10));
+    }
+
+    private Concept createConcept(Integer conceptId, ConceptName... names) {
+        Concept concept = new Concept(conceptId);
+        for (ConceptName name : names) {
+            concept.addName(name);
+        }
+        when(conceptService.getConcept(conceptId)).thenReturn(concept);
+        return concept;
+    }
+
+    private ConceptName name(Integer conceptNameId, String name, Locale locale) {
+        ConceptName conceptName = new ConceptName(name, locale);
+        conceptName.setConceptNameId(conceptNameId);
+        conceptName.setConceptNameType(ConceptNameType.FULLY_SPECIFIED);
+        return conceptName;
+    }
+}
@@ -0,0 +1,64 @@
+package org.openmrs.module.coreapps.diagnosis;
+
+import org.codehaus.jackson.JsonParseException;
+import org.junit.Test;
+import org.openmrs.api.ConceptService;
+import org.openmrs.module.emrapi.diagnosis.Diagnosis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class DiagnosisJsonReaderTest {
+
+    private DiagnosisJsonReader reader = new DiagnosisJsonReader(mock(ConceptService.class));
+
+    @Test
+    public void shouldReadAnArrayOfDiagnoses() throws Exception {
+        List<Diagnosis> diagnoses = reader.read("[{\"certainty\":\"PRESUMED\",\"diagnosisOrder\":\"PRIMARY\",\"diagnosis\":\"Non-Coded:Fever\"},"
+                + "{\"diagnosis\":\"Non-Coded:Cough\",\"ignored\":{\"a\":[1,2]},\"diagnosisOrder\":\"SECONDARY\",\"certainty\":\"CONFIRMED\"}]");
+
+        assertThat(diagnoses.size(), is(2));
+        assertThat(diagnoses.get(0).getDiagnosis().getNonCodedAnswer(), is("Fever"));
+        assertThat(diagnoses.get(0).getOrder(), is(Diagnosis.Order.PRIMARY));
+        assertThat(diagnoses.get(0).getCertainty(), is(Diagnosis.Certainty.PRESUMED));
+        assertThat(diagnoses.get(1).getDiagnosis().getNonCodedAnswer(), is("Cough"));
+        assertThat(diagnoses.get(1).getOrder(), is(Diagnosis.Order.SECONDARY));
+        assertThat(diagnoses.get(1).getCertainty(), is(Diagnosis.Certainty.CONFIRMED));
+    }
+
+    @Test
+    public void shouldReadASingleDiagnosis() throws Exception {
+        List<Diagnosis> diagnoses = reader.read("{\"certainty\":\"PRESUMED\",\"diagnosisOrder\":\"PRIMARY\",\"diagnosis\":\"Non-Coded:Fever\"}");
+
+        assertThat(diagnoses.size(), is(1));
+        assertThat(diagnoses.get(0).getDiagnosis().getNonCodedAnswer(), is("Fever"));
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void shouldFailOnIncompleteDiagnoses() throws Exception {
+        reader.read("[{\"diagnosisOrder\":\"PRIMARY\",\"diagnosis\":\"Non-Coded:Fever\"}]");
+    }
+
+    @Test
+    public void shouldReadMappingsInOrder() throws Exception {
+        Map<Integer, List<Diagnosis>> mappings = reader.readMappings("[{\"nonCodedObsId\":7,\"diagnosis\":"
+                + "{\"certainty\":\"PRESUMED\",\"diagnosisOrder\":\"PRIMARY\",\"diagnosis\":\"Non-Coded:Fever\"}},"
+                + "{\"diagnosis\":[{\"certainty\":\"CONFIRMED\",\"diagnosisOrder\":\"PRIMARY\",\"diagnosis\":\"Non-Coded:Cough\"}],"
+                + "\"nonCodedObsId\":\"3\"}]");
+
+        assertThat(new ArrayList<Integer>(mappings.keySet()), is(asList(7, 3)));
+        assertThat(mappings.get(7).get(0).getDiagnosis().getNonCodedAnswer(), is("Fever"));
+        assertThat(mappings.get(3).get(0).getDiagnosis().getNonCodedAnswer(), is("Cough"));
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void shouldFailOnMappingsWithoutAnObsId() throws Exception {
+        reader.readMappings("[{\"diagnosis\":{\"certainty\":\"PRESUMED\",\"diagnosisOrder\":\"PRIMARY\",\"diagnosis\":\"Non-Coded:Fever\"}}]");
+    }
+}
@@ -0,0 +1,51 @@
+package org.openmrs.module.coreapps.diagnosis;
+
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.ConceptSource;
+import org.openmrs.ui.framework.SimpleObject;
+
+import java.util.Locale;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+
+public class DiagnosisSearchCacheTest {
+
+    @Test
+    public void shouldCountHitsAndMisses() {
+        DiagnosisSearchCache cache = new DiagnosisSearchCache();
+        String key = cache.getKey("Mal ", Locale.ENGLISH, asList(new Concept(1)), asList(source(2)), 0, 50);
+        SimpleObject results = SimpleObject.create("results", asList(), "totalCount", 0, "hasMore", false);
+
+        assertThat(cache.get(key), is(nullValue()));
+        cache.put(key, results);
+        assertThat(cache.get(cache.getKey("mal", Locale.ENGLISH, asList(new Concept(1)), asList(source(2)), 0, 50)),
+                is(results));
+
+        assertThat(cache.getHitCount(), is(1L));
+        assertThat(cache.getMissCount(), is(1L));
+
+        cache.clear();
+        assertThat(cache.get(key), is(nullValue()));
+    }
+
+    @Test
+    public void shouldUseDifferentKeysForDifferentPagesLocalesAndSources() {
+        DiagnosisSearchCache cache = new DiagnosisSearchCache();
+        String key = cache.getKey("mal", Locale.ENGLISH, asList(new Concept(1)), asList(source(2)), 0, 50);
+
+        assertFalse(key.equals(cache.getKey("mal", Locale.ENGLISH, asList(new Concept(1)), asList(source(2)), 50, 50)));
+        assertFalse(key.equals(cache.getKey("mal", Locale.FRENCH, asList(new Concept(1)), asList(source(2)), 0, 50)));
+        assertFalse(key.equals(cache.getKey("mal", Locale.ENGLISH, asList(new Concept(1)), asList(source(3)), 0, 50)));
+    }
+
+    private ConceptSource source(Integer id) {
+        ConceptSource source = new ConceptSource();
+        source.setConceptSourceId(id);
+        return source;
+    }
+}
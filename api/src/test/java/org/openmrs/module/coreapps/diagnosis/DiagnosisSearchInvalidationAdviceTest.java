@@ -0,0 +1,75 @@
+package org.openmrs.module.coreapps.diagnosis;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.ConceptMapType;
+import org.openmrs.ConceptSource;
+import org.openmrs.api.ConceptService;
+
+import java.lang.reflect.Method;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+public class DiagnosisSearchInvalidationAdviceTest {
+
+    private DiagnosisSearchInvalidationAdvice advice;
+
+    private DiagnosisConceptIndex index;
+
+    private ConceptSearchResultSerializer serializer;
+
+    private DiagnosisSearchCache searchCache;
+
+    @Before
+    public void setUp() {
+        index = mock(DiagnosisConceptIndex.class);
+        serializer = mock(ConceptSearchResultSerializer.class);
+        searchCache = mock(DiagnosisSearchCache.class);
+
+        advice = new DiagnosisSearchInvalidationAdvice();
+        advice.setIndex(index);
+        advice.setSerializer(serializer);
+        advice.setSearchCache(searchCache);
+    }
+
+    @Test
+    public void shouldEvictTheMappingsOfAChangedConcept() throws Throwable {
+        Concept concept = new Concept(7);
+
+        advice.afterReturning(concept, method("saveConcept", Concept.class), new Object[] { concept }, null);
+
+        verify(index).conceptChanged(concept, false);
+        verify(serializer).conceptChanged(7);
+        verify(searchCache).clear();
+    }
+
+    @Test
+    public void shouldClearTheMappingsWhenAMapTypeIsChanged() throws Throwable {
+        ConceptMapType mapType = new ConceptMapType();
+
+        advice.afterReturning(mapType, method("saveConceptMapType", ConceptMapType.class), new Object[] { mapType }, null);
+
+        verify(serializer).clear();
+        verify(searchCache).clear();
+        verifyZeroInteractions(index);
+    }
+
+    @Test
+    public void shouldClearTheMappingsWhenAConceptSourceIsRetired() throws Throwable {
+        ConceptSource source = new ConceptSource();
+
+        advice.afterReturning(source, method("retireConceptSource", ConceptSource.class, String.class), new Object[] {
+                source, "reason" }, null);
+
+        verify(serializer).clear();
+        verify(searchCache).clear();
+        verifyZeroInteractions(index);
+    }
+
+    private Method method(String name, Class<?>... parameterTypes) throws NoSuchMethodException {
+        return ConceptService.class.getMethod(name, parameterTypes);
+    }
+}
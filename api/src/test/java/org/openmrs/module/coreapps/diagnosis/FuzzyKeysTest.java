@@ -0,0 +1,47 @@
+package org.openmrs.module.coreapps.diagnosis;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class FuzzyKeysTest {
+
+    @Test
+    public void shouldComputeSoundexCodes() {
+        assertThat(FuzzyKeys.soundex("robert"), is("R163"));
+        assertThat(FuzzyKeys.soundex("rupert"), is("R163"));
+        assertThat(FuzzyKeys.soundex("ashcraft"), is("A261"));
+        assertThat(FuzzyKeys.soundex("tymczak"), is("T522"));
+        assertThat(FuzzyKeys.soundex("lee"), is("L000"));
+        assertThat(FuzzyKeys.soundex("123"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldGiveMisspellingsTheSamePhoneticKey() {
+        assertThat(FuzzyKeys.getPhoneticKey("malaria"), is("M460"));
+        assertThat(FuzzyKeys.getPhoneticKey("malarya"), is("M460"));
+        assertThat(FuzzyKeys.getPhoneticKey("maleria 2"), is("M460 2"));
+    }
+
+    @Test
+    public void shouldFindMisspellingsMoreSimilarThanOtherWords() {
+        int malaria = FuzzyKeys.getKeys("malaria").size();
+
+        assertTrue(similarity("malarya", "malaria") > similarity("malarya", "fever"));
+        assertThat(FuzzyKeys.similarity(malaria, malaria, malaria), is(1.0));
+    }
+
+    private double similarity(String text, String other) {
+        Set<String> keys = FuzzyKeys.getKeys(text);
+        Set<String> otherKeys = FuzzyKeys.getKeys(other);
+        Set<String> shared = new HashSet<String>(keys);
+        shared.retainAll(otherKeys);
+        return FuzzyKeys.similarity(shared.size(), keys.size(), otherKeys.size());
+    }
+}
@@ -0,0 +1,115 @@
+package org.openmrs.module.coreapps.diagnosis;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.Encounter;
+import org.openmrs.Obs;
+import org.openmrs.api.EncounterService;
+import org.openmrs.api.ObsService;
+import org.openmrs.module.coreapps.db.CoreAppsDAO;
+import org.openmrs.module.emrapi.EmrApiProperties;
+import org.openmrs.module.emrapi.diagnosis.DiagnosisMetadata;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class NonCodedDiagnosisInvalidationAdviceTest {
+
+    private NonCodedDiagnosisInvalidationAdvice advice;
+
+    private NonCodedDiagnosisMatcher matcher;
+
+    private Obs nonCodedObs;
+
+    private Obs otherObs;
+
+    @Before
+    public void setUp() {
+        nonCodedObs = new Obs();
+        nonCodedObs.setConcept(new Concept(1));
+        otherObs = new Obs();
+        otherObs.setConcept(new Concept(2));
+
+        matcher = mock(NonCodedDiagnosisMatcher.class);
+        when(matcher.isAffectedBy(nonCodedObs)).thenReturn(true);
+
+        advice = new NonCodedDiagnosisInvalidationAdvice();
+        advice.setMatcher(matcher);
+    }
+
+    @Test
+    public void shouldInvalidateTheClustersWhenANonCodedDiagnosisIsVoided() throws Throwable {
+        advice.afterReturning(nonCodedObs, ObsService.class.getMethod("voidObs", Obs.class, String.class),
+                new Object[] { nonCodedObs, "reason" }, null);
+
+        verify(matcher).invalidate();
+    }
+
+    @Test
+    public void shouldNotInvalidateTheClustersWhenAnotherObsIsSaved() throws Throwable {
+        advice.afterReturning(otherObs, ObsService.class.getMethod("saveObs", Obs.class, String.class),
+                new Object[] { otherObs, null }, null);
+
+        verify(matcher, never()).invalidate();
+    }
+
+    @Test
+    public void shouldInvalidateTheClustersWhenAnEncounterWithANonCodedDiagnosisIsSaved() throws Throwable {
+        Encounter encounter = new Encounter();
+        encounter.addObs(otherObs);
+        encounter.addObs(nonCodedObs);
+
+        advice.afterReturning(encounter, method("saveEncounter", Encounter.class), new Object[] { encounter }, null);
+
+        verify(matcher).invalidate();
+    }
+
+    @Test
+    public void shouldNotInvalidateTheClustersWhenAnEncounterIsOnlyRead() throws Throwable {
+        Encounter encounter = new Encounter();
+        encounter.addObs(nonCodedObs);
+
+        advice.afterReturning(encounter, method("getEncounter", Integer.class), new Object[] { 1 }, null);
+
+        verify(matcher, never()).invalidate();
+    }
+
+    @Test
+    public void shouldInvalidateTheClustersWhenADiagnosisGroupWithANonCodedDiagnosisIsVoided() throws Throwable {
+        Concept nonCoded = new Concept(1);
+        DiagnosisMetadata diagnosisMetadata = mock(DiagnosisMetadata.class);
+        when(diagnosisMetadata.getNonCodedDiagnosisConcept()).thenReturn(nonCoded);
+        EmrApiProperties emrApiProperties = mock(EmrApiProperties.class);
+        when(emrApiProperties.getDiagnosisMetadata()).thenReturn(diagnosisMetadata);
+        CoreAppsDAO coreAppsDAO = mock(CoreAppsDAO.class);
+        when(coreAppsDAO.getValueTextCounts(nonCoded)).thenReturn(new HashMap<String, Integer>());
+
+        NonCodedDiagnosisMatcher realMatcher = new NonCodedDiagnosisMatcher();
+        realMatcher.setEmrApiProperties(emrApiProperties);
+        realMatcher.setCoreAppsDAO(coreAppsDAO);
+        realMatcher = spy(realMatcher);
+        realMatcher.getClusters();
+        advice.setMatcher(realMatcher);
+
+        Obs diagnosisGroup = new Obs();
+        diagnosisGroup.setConcept(new Concept(3));
+        diagnosisGroup.addGroupMember(otherObs);
+        diagnosisGroup.addGroupMember(nonCodedObs);
+
+        advice.afterReturning(diagnosisGroup, ObsService.class.getMethod("voidObs", Obs.class, String.class),
+                new Object[] { diagnosisGroup, "reason" }, null);
+
+        verify(realMatcher).invalidate();
+    }
+
+    private Method method(String name, Class<?>... parameterTypes) throws NoSuchMethodException {
+        return EncounterService.class.getMethod(name, parameterTypes);
+    }
+}
@@ -0,0 +1,103 @@
+package org.openmrs.module.coreapps.diagnosis;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.Obs;
+import org.openmrs.module.coreapps.db.CoreAppsDAO;
+import org.openmrs.module.emrapi.EmrApiProperties;
+import org.openmrs.module.emrapi.diagnosis.DiagnosisMetadata;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class NonCodedDiagnosisMatcherTest {
+
+    private NonCodedDiagnosisMatcher matcher;
+
+    private CoreAppsDAO coreAppsDAO;
+
+    private Concept nonCoded;
+
+    @Before
+    public void setUp() {
+        nonCoded = new Concept(1);
+        DiagnosisMetadata diagnosisMetadata = mock(DiagnosisMetadata.class);
+        when(diagnosisMetadata.getNonCodedDiagnosisConcept()).thenReturn(nonCoded);
+        EmrApiProperties emrApiProperties = mock(EmrApiProperties.class);
+        when(emrApiProperties.getDiagnosisMetadata()).thenReturn(diagnosisMetadata);
+
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        counts.put("malaria", 10);
+        counts.put("malarya", 3);
+        counts.put("maleria.", 2);
+        counts.put("fever", 4);
+        coreAppsDAO = mock(CoreAppsDAO.class);
+        when(coreAppsDAO.getValueTextCounts(nonCoded)).thenReturn(counts);
+
+        matcher = new NonCodedDiagnosisMatcher();
+        matcher.setEmrApiProperties(emrApiProperties);
+        matcher.setCoreAppsDAO(coreAppsDAO);
+    }
+
+    @Test
+    public void shouldGroupTextsThatSoundTheSame() {
+        List<NonCodedDiagnosisCluster> clusters = matcher.getClusters();
+
+        assertThat(clusters.size(), is(2));
+        assertThat(clusters.get(0).getLabel(), is("malaria"));
+        assertThat(clusters.get(0).getCount(), is(15));
+        assertThat(clusters.get(0).getTexts(), is(asList("malaria", "malarya", "maleria.")));
+        assertThat(clusters.get(1).getLabel(), is("fever"));
+    }
+
+    @Test
+    public void shouldFindAClusterByKey() {
+        assertThat(matcher.getCluster("M460").getCount(), is(15));
+        assertThat(matcher.getCluster("X000"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldBuildTheClustersOnce() {
+        matcher.getClusters();
+        matcher.getCluster("M460");
+        matcher.getClusters();
+
+        verify(coreAppsDAO, times(1)).getValueTextCounts(nonCoded);
+    }
+
+    @Test
+    public void shouldBuildTheClustersAgainOnceInvalidated() {
+        matcher.getClusters();
+
+        matcher.invalidate();
+        matcher.getClusters();
+
+        verify(coreAppsDAO, times(2)).getValueTextCounts(nonCoded);
+    }
+
+    @Test
+    public void shouldOnlyBeAffectedByNonCodedDiagnosesOnceTheClustersAreBuilt() {
+        Obs nonCodedObs = new Obs();
+        nonCodedObs.setConcept(nonCoded);
+        Obs otherObs = new Obs();
+        otherObs.setConcept(new Concept(2));
+
+        assertThat(matcher.isAffectedBy(nonCodedObs), is(false));
+
+        matcher.getClusters();
+
+        assertThat(matcher.isAffectedBy(nonCodedObs), is(true));
+        assertThat(matcher.isAffectedBy(otherObs), is(false));
+    }
+}
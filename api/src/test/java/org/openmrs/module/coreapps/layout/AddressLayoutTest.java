@@ -0,0 +1,30 @@
+package org.openmrs.module.coreapps.layout;
+
+import org.junit.Test;
+import org.openmrs.PersonAddress;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class AddressLayoutTest {
+
+    @Test
+    public void shouldReplaceTokensWithTheAddressProperties() {
+        AddressLayout layout = AddressLayout.compile(asList("address1", "cityVillage, stateProvince postalCode", "country"),
+                asList("address1", "cityVillage", "stateProvince", "postalCode", "country"));
+
+        PersonAddress address = new PersonAddress();
+        address.setAddress1("1 Main Street");
+        address.setCityVillage("Boston");
+        address.setStateProvince("MA");
+        address.setCountry("country"); // a value that is also a token is not replaced again
+
+        assertThat(layout.format(address), is(asList("1 Main Street", "Boston, MA ", "country")));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldFailOnTokensThatAreNotAddressProperties() {
+        AddressLayout.compile(asList("nowhere"), asList("nowhere"));
+    }
+}
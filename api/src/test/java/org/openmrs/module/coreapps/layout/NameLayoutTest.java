@@ -0,0 +1,69 @@
+package org.openmrs.module.coreapps.layout;
+
+import org.junit.Test;
+import org.openmrs.PersonName;
+import org.openmrs.api.APIException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class NameLayoutTest {
+
+    @Test
+    public void shouldFormatOneLinePerFieldWithItsLabel() {
+        NameLayout layout = NameLayout.compile(asList(
+                asList(token("givenName"), text(" (given)")),
+                asList(token("middleName")),
+                asList(token("familyName"))), "IS_NAME_TOKEN", mappings());
+
+        PersonName name = new PersonName("John", null, "Smith");
+        Map<String, String> lines = layout.format(name);
+
+        assertThat(new ArrayList<String>(lines.keySet()), is(asList("Given", "Family")));
+        assertThat(lines.get("Given"), is("John (given)"));
+        assertThat(lines.get("Family"), is("Smith"));
+    }
+
+    @Test
+    public void shouldReadPropertiesWithoutADirectAccessor() {
+        NameLayout layout = NameLayout.compile(asList(asList(token("uuid"))), "IS_NAME_TOKEN", mappings());
+
+        PersonName name = new PersonName("John", null, "Smith");
+        name.setUuid("name-uuid");
+
+        assertThat(layout.format(name).get(null), is("name-uuid"));
+    }
+
+    @Test(expected = APIException.class)
+    public void shouldFailOnUnknownProperties() {
+        NameLayout.compile(asList(asList(token("nickname"))), "IS_NAME_TOKEN", mappings());
+    }
+
+    private Map<String, String> token(String codeName) {
+        Map<String, String> token = new HashMap<String, String>();
+        token.put("isToken", "IS_NAME_TOKEN");
+        token.put("codeName", codeName);
+        return token;
+    }
+
+    private Map<String, String> text(String displayText) {
+        Map<String, String> text = new HashMap<String, String>();
+        text.put("isToken", "IS_NOT_NAME_TOKEN");
+        text.put("displayText", displayText);
+        return text;
+    }
+
+    private Map<String, String> mappings() {
+        Map<String, String> mappings = new HashMap<String, String>();
+        mappings.put("givenName", "Given");
+        mappings.put("middleName", "Middle");
+        mappings.put("familyName", "Family");
+        return mappings;
+    }
+}
@@ -0,0 +1,57 @@
+package org.openmrs.module.coreapps.parser;
+
+import org.junit.Test;
+import org.openmrs.Encounter;
+import org.openmrs.Privilege;
+import org.openmrs.Role;
+import org.openmrs.User;
+import org.openmrs.module.emrapi.EmrApiConstants;
+
+import java.util.Collections;
+import java.util.HashSet;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EncounterPermissionEvaluatorTest {
+
+    @Test
+    public void shouldUseTheKnownParticipatedEncountersWhenProvided() {
+        User user = new User();
+        user.addRole(new Role("Clerk"));
+
+        Encounter participated = createEncounter(7);
+        Encounter notParticipated = createEncounter(8);
+        // would count as participation if the evaluator looked at the encounter itself
+        notParticipated.setCreator(user);
+
+        EncounterPermissionEvaluator evaluator = new EncounterPermissionEvaluator(user,
+                new HashSet<Integer>(asList(7)));
+
+        assertTrue(evaluator.canEdit(participated));
+        assertTrue(evaluator.canDelete(participated));
+        assertFalse(evaluator.canEdit(notParticipated));
+        assertFalse(evaluator.canDelete(notParticipated));
+    }
+
+    @Test
+    public void shouldAllowEditingAnyEncounterWithTheEditPrivilege() {
+        Role role = new Role("Clinician");
+        role.addPrivilege(new Privilege(EmrApiConstants.PRIVILEGE_EDIT_ENCOUNTER));
+        User user = new User();
+        user.addRole(role);
+
+        EncounterPermissionEvaluator evaluator = new EncounterPermissionEvaluator(user,
+                Collections.<Integer>emptySet());
+
+        assertTrue(evaluator.canEdit(createEncounter(7)));
+        assertFalse(evaluator.canDelete(createEncounter(7)));
+    }
+
+    private Encounter createEncounter(Integer encounterId) {
+        Encounter encounter = new Encounter(encounterId);
+        encounter.setCreator(new User());
+        return encounter;
+    }
+}
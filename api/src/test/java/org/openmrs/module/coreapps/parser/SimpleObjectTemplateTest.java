@@ -0,0 +1,64 @@
+package org.openmrs.module.coreapps.parser;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openmrs.Encounter;
+import org.openmrs.EncounterRole;
+import org.openmrs.Location;
+import org.openmrs.Provider;
+import org.openmrs.module.emrapi.encounter.EncounterDomainWrapper;
+import org.openmrs.ui.framework.SimpleObject;
+import org.openmrs.ui.framework.UiUtils;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SimpleObjectTemplateTest {
+
+    private UiUtils ui;
+
+    @Before
+    public void setUp() {
+        ui = mock(UiUtils.class);
+        when(ui.format(any())).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                Object arg = invocation.getArguments()[0];
+                return arg == null ? "" : "formatted " + arg;
+            }
+        });
+    }
+
+    @Test
+    public void shouldBuildTheSameSimpleObjectAsFromObject() {
+        Encounter encounter = new Encounter(7);
+        encounter.setEncounterDatetime(new Date());
+        encounter.setLocation(new Location(3));
+        encounter.addProvider(new EncounterRole(1), new Provider(5));
+        encounter.addProvider(new EncounterRole(2), new Provider(6));
+
+        String[] properties = { "encounterId", "location", "encounterDatetime", "encounterProviders.provider", "voided",
+                "form" };
+        EncounterDomainWrapper wrapper = new EncounterDomainWrapper(encounter);
+
+        SimpleObject expected = SimpleObject.fromObject(wrapper, ui, properties);
+        SimpleObject actual = new SimpleObjectTemplate(properties).toSimpleObject(wrapper, ui);
+
+        assertEquals(expected, actual);
+        assertEquals(7, actual.get("encounterId"));
+        assertEquals(2, ((List) actual.get("encounterProviders")).size());
+    }
+
+    @Test
+    public void shouldReturnNullForNullObject() {
+        assertNull(new SimpleObjectTemplate("id").toSimpleObject(null, ui));
+    }
+}
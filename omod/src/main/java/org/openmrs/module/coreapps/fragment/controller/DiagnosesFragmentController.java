@@ -14,21 +14,24 @@
 
 package org.openmrs.module.coreapps.fragment.controller;
 
-import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.commons.lang.StringUtils;
-import org.codehaus.jackson.JsonNode;
-import org.codehaus.jackson.map.ObjectMapper;
 import org.openmrs.Concept;
-import org.openmrs.ConceptName;
 import org.openmrs.ConceptSearchResult;
 import org.openmrs.ConceptSource;
 import org.openmrs.Obs;
 import org.openmrs.api.ConceptService;
 import org.openmrs.api.ObsService;
 import org.openmrs.module.appui.UiSessionContext;
+import org.openmrs.module.coreapps.diagnosis.BulkDiagnosisCoder;
+import org.openmrs.module.coreapps.diagnosis.ConceptSearchResultSerializer;
+import org.openmrs.module.coreapps.diagnosis.DiagnosisCandidate;
+import org.openmrs.module.coreapps.diagnosis.DiagnosisConceptIndex;
+import org.openmrs.module.coreapps.diagnosis.DiagnosisJsonReader;
+import org.openmrs.module.coreapps.diagnosis.DiagnosisSearchCache;
+import org.openmrs.module.coreapps.diagnosis.DiagnosisSearchResults;
+import org.openmrs.module.coreapps.diagnosis.NonCodedDiagnosisCluster;
+import org.openmrs.module.coreapps.diagnosis.NonCodedDiagnosisMatcher;
 import org.openmrs.module.emrapi.EmrApiProperties;
-import org.openmrs.module.emrapi.concept.EmrConceptService;
-import org.openmrs.module.emrapi.diagnosis.CodedOrFreeTextAnswer;
 import org.openmrs.module.emrapi.diagnosis.Diagnosis;
 import org.openmrs.module.emrapi.diagnosis.DiagnosisService;
 import org.openmrs.ui.framework.SimpleObject;
@@ -41,55 +44,127 @@ import org.springframework.web.bind.annotation.RequestParam;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.UUID;
 
 /**
  *
  */
 public class DiagnosesFragmentController {
 
-    public List<SimpleObject> search(UiSessionContext context,
-                                     UiUtils ui,
-                                     @SpringBean("emrApiProperties") EmrApiProperties emrApiProperties,
-                                     @SpringBean("emrConceptService") EmrConceptService emrConceptService,
-                                     @RequestParam("term") String query,
-                                     @RequestParam(value = "start", defaultValue = "0") Integer start,
-                                     @RequestParam(value = "size", defaultValue = "50") Integer size) throws Exception {
+    /**
+     * @return the requested page of results, or if includeTotal is true, an object with the page of results and the
+     *         totalCount (when known) and hasMore of the whole search
+     */
+    public Object search(UiSessionContext context,
+                         UiUtils ui,
+                         @SpringBean("emrApiProperties") EmrApiProperties emrApiProperties,
+                         @SpringBean("coreapps.diagnosisConceptIndex") DiagnosisConceptIndex diagnosisConceptIndex,
+                         @SpringBean("coreapps.diagnosisSearchCache") DiagnosisSearchCache diagnosisSearchCache,
+                         @SpringBean("coreapps.conceptSearchResultSerializer") ConceptSearchResultSerializer serializer,
+                         @RequestParam("term") String query,
+                         @RequestParam(value = "start", defaultValue = "0") Integer start,
+                         @RequestParam(value = "size", defaultValue = "50") Integer size,
+                         @RequestParam(value = "includeTotal", defaultValue = "false") Boolean includeTotal) throws Exception {
+
+        return searchDiagnoses(context, ui, emrApiProperties, diagnosisConceptIndex, diagnosisSearchCache, serializer,
+                query, start, size, includeTotal, false);
+    }
+
+    /**
+     * Like #search, but followed by the diagnoses with names similar to the term, to help code misspelled free text
+     */
+    public Object searchNonCoded(UiSessionContext context,
+                                 UiUtils ui,
+                                 @SpringBean("emrApiProperties") EmrApiProperties emrApiProperties,
+                                 @SpringBean("coreapps.diagnosisConceptIndex") DiagnosisConceptIndex diagnosisConceptIndex,
+                                 @SpringBean("coreapps.diagnosisSearchCache") DiagnosisSearchCache diagnosisSearchCache,
+                                 @SpringBean("coreapps.conceptSearchResultSerializer") ConceptSearchResultSerializer serializer,
+                                 @RequestParam("term") String query,
+                                 @RequestParam(value = "start", defaultValue = "0") Integer start,
+                                 @RequestParam(value = "size", defaultValue = "50") Integer size,
+                                 @RequestParam(value = "includeTotal", defaultValue = "false") Boolean includeTotal) throws Exception {
+
+        return searchDiagnoses(context, ui, emrApiProperties, diagnosisConceptIndex, diagnosisSearchCache, serializer,
+                query, start, size, includeTotal, true);
+    }
+
+    private Object searchDiagnoses(UiSessionContext context, UiUtils ui, EmrApiProperties emrApiProperties,
+                                   DiagnosisConceptIndex diagnosisConceptIndex, DiagnosisSearchCache diagnosisSearchCache,
+                                   ConceptSearchResultSerializer serializer, String query, Integer start, Integer size,
+                                   Boolean includeTotal, boolean fuzzy) throws Exception {
 
         Collection<Concept> diagnosisSets = emrApiProperties.getDiagnosisSets();
         Locale locale = context.getLocale();
 
         List<ConceptSource> sources = emrApiProperties.getConceptSourcesForDiagnosisSearch();
 
-        List<ConceptSearchResult> hits = emrConceptService.conceptSearch(query, locale, null, diagnosisSets, sources, null);
-        List<SimpleObject> ret = new ArrayList<SimpleObject>();
-        for (ConceptSearchResult hit : hits) {
-            ret.add(simplify(hit, ui, locale));
+        String cacheKey = (fuzzy ? "fuzzy|" : "") + diagnosisSearchCache.getKey(query, locale, diagnosisSets, sources, start, size);
+        SimpleObject results = diagnosisSearchCache.get(cacheKey);
+        if (results == null) {
+            DiagnosisSearchResults hits = diagnosisConceptIndex.search(query, locale, diagnosisSets, sources, start, size,
+                    fuzzy);
+            List<SimpleObject> ret = new ArrayList<SimpleObject>();
+            for (ConceptSearchResult hit : hits.getResults()) {
+                ret.add(serializer.simplify(hit, ui, locale));
+            }
+            results = SimpleObject.create("results", ret, "totalCount", hits.getTotalCount(), "hasMore", hits.hasMore());
+            diagnosisSearchCache.put(cacheKey, results);
         }
-        return ret;
+
+        return Boolean.TRUE.equals(includeTotal) ? results : results.get("results");
     }
 
-    public List<SimpleObject> searchNonCoded(UiSessionContext context,
-                                     UiUtils ui,
-                                     @SpringBean("emrApiProperties") EmrApiProperties emrApiProperties,
-                                     @SpringBean("emrConceptService") EmrConceptService emrConceptService,
-                                     @RequestParam("term") String query,
-                                     @RequestParam(value = "start", defaultValue = "0") Integer start,
-                                     @RequestParam(value = "size", defaultValue = "50") Integer size) throws Exception {
+    /**
+     * @return how well the diagnosis search cache is doing
+     */
+    public SimpleObject getSearchCacheStatistics(@SpringBean("coreapps.diagnosisSearchCache") DiagnosisSearchCache diagnosisSearchCache) {
+        return SimpleObject.create("hits", diagnosisSearchCache.getHitCount(), "misses",
+                diagnosisSearchCache.getMissCount(), "size", diagnosisSearchCache.getSize());
+    }
+
+    /**
+     * @return the requested page of the clusters of non-coded diagnoses that sound the same, biggest first, each with
+     *         the coded diagnoses it may have meant, like { clusters: [ { key, label, count, variants: [ { text, count } ],
+     *         candidates: [ (as #search) + similarity ] } ], totalCount }
+     */
+    public SimpleObject getNonCodedClusters(UiSessionContext context,
+                                            UiUtils ui,
+                                            @SpringBean("emrApiProperties") EmrApiProperties emrApiProperties,
+                                            @SpringBean("coreapps.diagnosisConceptIndex") DiagnosisConceptIndex diagnosisConceptIndex,
+                                            @SpringBean("coreapps.nonCodedDiagnosisMatcher") NonCodedDiagnosisMatcher nonCodedDiagnosisMatcher,
+                                            @SpringBean("coreapps.conceptSearchResultSerializer") ConceptSearchResultSerializer serializer,
+                                            @RequestParam(value = "start", defaultValue = "0") Integer start,
+                                            @RequestParam(value = "size", defaultValue = "50") Integer size,
+                                            @RequestParam(value = "candidates", defaultValue = "5") Integer candidates) throws Exception {
 
         Collection<Concept> diagnosisSets = emrApiProperties.getDiagnosisSets();
+        List<ConceptSource> sources = emrApiProperties.getConceptSourcesForDiagnosisSearch();
         Locale locale = context.getLocale();
 
-        List<ConceptSource> sources = emrApiProperties.getConceptSourcesForDiagnosisSearch();
+        List<NonCodedDiagnosisCluster> clusters = nonCodedDiagnosisMatcher.getClusters();
+        int from = Math.min(Math.max(start, 0), clusters.size());
+        int to = Math.min(from + Math.max(size, 0), clusters.size());
 
-        List<ConceptSearchResult> hits = emrConceptService.conceptSearch(query, locale, null, diagnosisSets, sources, null);
         List<SimpleObject> ret = new ArrayList<SimpleObject>();
-        for (ConceptSearchResult hit : hits) {
-            ret.add(simplify(hit, ui, locale));
+        for (NonCodedDiagnosisCluster cluster : clusters.subList(from, to)) {
+            List<SimpleObject> variants = new ArrayList<SimpleObject>();
+            for (NonCodedDiagnosisCluster.Variant variant : cluster.getVariants()) {
+                variants.add(SimpleObject.create("text", variant.getText(), "count", variant.getCount()));
+            }
+            List<SimpleObject> candidateList = new ArrayList<SimpleObject>();
+            for (DiagnosisCandidate candidate : diagnosisConceptIndex.findCandidates(cluster.getLabel(), locale,
+                    diagnosisSets, sources, candidates)) {
+                SimpleObject simple = serializer.simplify(candidate.getResult(), ui, locale);
+                simple.put("similarity", candidate.getSimilarity());
+                candidateList.add(simple);
+            }
+            ret.add(SimpleObject.create("key", cluster.getKey(), "label", cluster.getLabel(), "count", cluster.getCount(),
+                    "variants", variants, "candidates", candidateList));
         }
-        return ret;
+        return SimpleObject.create("clusters", ret, "totalCount", clusters.size());
     }
 
     public FragmentActionResult codeDiagnosis(UiUtils ui,
@@ -104,16 +179,10 @@ public class DiagnosesFragmentController {
         if(nonCodedObsId != null){
             Obs nonCodedObs = obsService.getObs(nonCodedObsId);
             if (nonCodedObs !=null ){
+                DiagnosisJsonReader diagnosisJsonReader = new DiagnosisJsonReader(conceptService);
                 List<Diagnosis> diagnosisList = new ArrayList<Diagnosis>();
                 for (String diagnosisJson : diagnoses) {
-                    ObjectMapper mapper = new ObjectMapper();
-                    JsonNode rootNode = mapper.readTree(diagnosisJson);
-                    Iterator<JsonNode> iterator = rootNode.iterator();
-                    while (iterator.hasNext()){
-                        JsonNode next = iterator.next();
-                        Diagnosis diagnosis = parseDiagnosisJson(next.toString(), conceptService);
-                        diagnosisList.add(diagnosis);
-                    }
+                    diagnosisList.addAll(diagnosisJsonReader.read(diagnosisJson));
                 }
                 List<Obs> newDiagnoses= diagnosisService.codeNonCodedDiagnosis(nonCodedObs, diagnosisList);
                 if ((newDiagnoses != null) && (newDiagnoses.size()>0) ){
@@ -125,54 +194,66 @@ public class DiagnosesFragmentController {
     }
 
     /**
-     * This is public so that it can be used by a fragment that needs to prepopulate a diagnoses widget that is normally
-     * populated with AJAX results from the #search method.
-     * @param result
-     * @param ui
-     * @param locale
-     * @return
-     * @throws Exception
+     * Codes many non-coded diagnoses at once, either those given in mappings, like
+     * [{"nonCodedObsId":123,"diagnosis":{"certainty":"PRESUMED","diagnosisOrder":"PRIMARY","diagnosis":"ConceptName:840"}}],
+     * or all those whose free text is nonCodedText, or that are in the cluster with clusterKey (see
+     * #getNonCodedClusters), with diagnosis. This only starts the job, and returns its progress so far, whose jobId
+     * (the given one, or a new one if none is given) #getCodingProgress can then be polled with.
      */
-    public SimpleObject simplify(ConceptSearchResult result, UiUtils ui, Locale locale) throws Exception {
-        SimpleObject simple = SimpleObject.fromObject(result, ui, "word", "conceptName.id", "conceptName.uuid", "conceptName.conceptNameType", "conceptName.name", "concept.id", "concept.uuid", "concept.conceptMappings.conceptMapType", "concept.conceptMappings.conceptReferenceTerm.code", "concept.conceptMappings.conceptReferenceTerm.name", "concept.conceptMappings.conceptReferenceTerm.conceptSource.name");
-
-        Concept concept = result.getConcept();
-        ConceptName conceptName = result.getConceptName();
-        ConceptName preferredName = getPreferredName(locale, concept);
-        PropertyUtils.setProperty(simple, "concept.preferredName", preferredName.getName());
-
-        return simple;
-    }
+    public Object codeDiagnoses(UiUtils ui,
+                                @RequestParam(value = "jobId", required = false) String jobId,
+                                @RequestParam(value = "mappings", required = false) String mappings,
+                                @RequestParam(value = "nonCodedText", required = false) String nonCodedText,
+                                @RequestParam(value = "clusterKey", required = false) String clusterKey,
+                                @RequestParam(value = "diagnosis", required = false) String diagnosis,
+                                @SpringBean("conceptService") ConceptService conceptService,
+                                @SpringBean("coreapps.bulkDiagnosisCoder") BulkDiagnosisCoder bulkDiagnosisCoder,
+                                @SpringBean("coreapps.nonCodedDiagnosisMatcher") NonCodedDiagnosisMatcher nonCodedDiagnosisMatcher) throws Exception {
 
-    private ConceptName getPreferredName(Locale locale, Concept concept) {
-        ConceptName name = concept.getPreferredName(locale);
-        if (name == null && (StringUtils.isNotEmpty(locale.getCountry()) || StringUtils.isNotEmpty(locale.getVariant()))) {
-            name = concept.getPreferredName(new Locale(locale.getLanguage()));
+        if (StringUtils.isBlank(jobId)) {
+            jobId = UUID.randomUUID().toString();
         }
-        if (name == null) {
-            name = concept.getName(locale);
+
+        DiagnosisJsonReader diagnosisJsonReader = new DiagnosisJsonReader(conceptService);
+        BulkDiagnosisCoder.Progress progress;
+        if (StringUtils.isNotBlank(mappings)) {
+            progress = bulkDiagnosisCoder.code(jobId, diagnosisJsonReader.readMappings(mappings));
+        } else if (StringUtils.isNotBlank(nonCodedText) && StringUtils.isNotBlank(diagnosis)) {
+            progress = bulkDiagnosisCoder.codeAll(jobId, Collections.singleton(nonCodedText), diagnosisJsonReader.read(diagnosis));
+        } else if (clusterKey != null && StringUtils.isNotBlank(diagnosis)) {
+            NonCodedDiagnosisCluster cluster = nonCodedDiagnosisMatcher.getCluster(clusterKey);
+            if (cluster == null) {
+                return new FailureResult(ui.message("coreapps.dataManagement.codeDiagnoses.nothingToCode"));
+            }
+            progress = bulkDiagnosisCoder.codeAll(jobId, cluster.getTexts(), diagnosisJsonReader.read(diagnosis));
+        } else {
+            return new FailureResult(ui.message("coreapps.dataManagement.codeDiagnoses.nothingToCode"));
         }
-        return name;
+        // the job changes the non-coded diagnoses the clusters are built from, and drops them again once it is over
+        nonCodedDiagnosisMatcher.invalidate();
+        return progress.toSimpleObject();
+    }
 
+    /**
+     * @return the progress of a #codeDiagnoses job, or null if there is no such job
+     */
+    public SimpleObject getCodingProgress(@RequestParam("jobId") String jobId,
+                                          @SpringBean("coreapps.bulkDiagnosisCoder") BulkDiagnosisCoder bulkDiagnosisCoder) {
+        BulkDiagnosisCoder.Progress progress = bulkDiagnosisCoder.getProgress(jobId);
+        return progress == null ? null : progress.toSimpleObject();
     }
 
     /**
-     * @param diagnosisJson  like {"certainty":"PRESUMED","diagnosisOrder":"PRIMARY","diagnosis":"ConceptName:840"}
-     * @param conceptService
+     * This is public so that it can be used by a fragment that needs to prepopulate a diagnoses widget that is normally
+     * populated with AJAX results from the #search method. Unlike #search, this does not reuse the cached mappings.
+     * @param result
+     * @param ui
+     * @param locale
      * @return
      * @throws Exception
      */
-    private Diagnosis parseDiagnosisJson(String diagnosisJson, ConceptService conceptService) throws Exception {
-        JsonNode node = new ObjectMapper().readTree(diagnosisJson);
-
-        CodedOrFreeTextAnswer answer = new CodedOrFreeTextAnswer(node.get("diagnosis").getTextValue(), conceptService);
-        Diagnosis.Order diagnosisOrder = Diagnosis.Order.valueOf(node.get("diagnosisOrder").getTextValue());
-        Diagnosis.Certainty certainty = Diagnosis.Certainty.valueOf(node.get("certainty").getTextValue());
-
-        Diagnosis diagnosis = new Diagnosis(answer, diagnosisOrder);
-        diagnosis.setCertainty(certainty);
-
-        return diagnosis;
+    public SimpleObject simplify(ConceptSearchResult result, UiUtils ui, Locale locale) throws Exception {
+        return new ConceptSearchResultSerializer().simplify(result, ui, locale);
     }
 
 }
@@ -15,12 +15,9 @@
 package org.openmrs.module.coreapps.fragment.controller;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.commons.beanutils.BeanUtils;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.StringUtils;
 
@@ -32,7 +29,6 @@ import org.openmrs.api.APIException;
 import org.openmrs.api.ConceptService;
 import org.openmrs.api.LocationService;
 import org.openmrs.api.ObsService;
-import org.openmrs.api.context.Context;
 import org.openmrs.module.appframework.context.AppContextModel;
 import org.openmrs.module.appframework.domain.AppDescriptor;
 import org.openmrs.module.appframework.domain.Extension;
@@ -40,11 +36,13 @@ import org.openmrs.module.appframework.service.AppFrameworkService;
 import org.openmrs.module.appui.UiSessionContext;
 import org.openmrs.module.coreapps.CoreAppsProperties;
 import org.openmrs.module.coreapps.NameSupportCompatibility;
-import org.openmrs.module.coreapps.contextmodel.PatientContextModel;
-import org.openmrs.module.coreapps.contextmodel.VisitContextModel;
+import org.openmrs.module.coreapps.cache.ConceptMappingCache;
+import org.openmrs.module.coreapps.db.CoreAppsDAO;
 import org.openmrs.module.coreapps.fragment.controller.patientheader.RegistrationDataHelper;
 import org.openmrs.module.coreapps.fragment.controller.patientheader.RegistrationDataHelper.DataContextWrapper;
 import org.openmrs.module.coreapps.fragment.controller.patientheader.RegistrationDataHelper.RegistrationSectionData;
+import org.openmrs.module.coreapps.helper.ContextModels;
+import org.openmrs.module.coreapps.helper.ExtensionResolver;
 import org.openmrs.module.emrapi.EmrApiProperties;
 import org.openmrs.module.emrapi.adt.AdtService;
 import org.openmrs.module.emrapi.patient.PatientDomainWrapper;
@@ -72,7 +70,11 @@ public class PatientHeaderFragmentController {
 	                       @SpringBean("conceptService") ConceptService conceptService, @SpringBean("obsService") ObsService obsService,
 	                       @SpringBean("locationService") LocationService locationService,
 	                       @SpringBean("appFrameworkService") AppFrameworkService appFrameworkService,
-	                       @SpringBean("adtService") AdtService adtService, UiSessionContext sessionContext,
+	                       @SpringBean("adtService") AdtService adtService,
+	                       @SpringBean("coreAppsDAO") CoreAppsDAO coreAppsDAO,
+	                       @SpringBean("coreapps.conceptMappingCache") ConceptMappingCache conceptMappingCache,
+	                       @SpringBean("coreapps.NameSupportCompatibility") NameSupportCompatibility nameSupport,
+	                       UiSessionContext sessionContext,
                            UiUtils uiUtils,
                            FragmentModel model) {
 
@@ -82,7 +84,7 @@ public class PatientHeaderFragmentController {
             wrapper = (PatientDomainWrapper) patient;
         }
         config.addAttribute("patient", wrapper);
-        config.addAttribute("patientNames", getNames(wrapper.getPersonName()));
+        config.addAttribute("patientNames", getNames(nameSupport, wrapper.getPersonName()));
         
 		VisitDomainWrapper activeVisit = (VisitDomainWrapper) config.getAttribute("activeVisit");
 		if (activeVisit == null) {
@@ -96,8 +98,9 @@ public class PatientHeaderFragmentController {
 
         if (appContextModel == null) {
             AppContextModel contextModel = sessionContext.generateAppContextModel();
-            contextModel.put("patient", new PatientContextModel(wrapper.getPatient()));
-            contextModel.put("visit", activeVisit == null ? null : new VisitContextModel(activeVisit));
+            ContextModels contextModels = ContextModels.getInstance();
+            contextModel.put("patient", contextModels.getPatientContextModel(wrapper.getPatient()));
+            contextModel.put("visit", contextModels.getVisitContextModel(activeVisit));
             model.addAttribute("appContextModel", contextModel);
         }
 
@@ -107,17 +110,15 @@ public class PatientHeaderFragmentController {
         }
 
         // Scan extensions
-        List<Extension> firstLineFragments = appFrameworkService.getExtensionsForCurrentUser("patientHeader.firstLineFragments");
-        Collections.sort(firstLineFragments);
-        model.addAttribute("firstLineFragments", firstLineFragments);
-		
-        List<Extension> secondLineFragments = appFrameworkService.getExtensionsForCurrentUser("patientHeader.secondLineFragments");
-        Collections.sort(secondLineFragments);
-        model.addAttribute("secondLineFragments", secondLineFragments);
+        ExtensionResolver extensionResolver = ExtensionResolver.getInstance(appFrameworkService);
+        model.addAttribute("firstLineFragments", extensionResolver.getSortedExtensions("patientHeader.firstLineFragments"));
+        model.addAttribute("secondLineFragments", extensionResolver.getSortedExtensions("patientHeader.secondLineFragments"));
 
         // Adapting the header's content based on actual/current registration app's sections.
  		List<AppDescriptor> regAppDescriptors = getRegistrationAppConfig(appFrameworkService);
- 		List<RegistrationSectionData> regAppSections = getRegistrationData(regAppDescriptors, new DataContextWrapper(sessionContext.getLocale(), wrapper, conceptService, obsService, locationService));
+ 		DataContextWrapper dataContext = new DataContextWrapper(sessionContext.getLocale(), wrapper, conceptService, obsService, locationService);
+ 		dataContext.setConceptMappingCache(conceptMappingCache);
+ 		List<RegistrationSectionData> regAppSections = getRegistrationData(regAppDescriptors, dataContext, coreAppsDAO);
  		config.addAttribute("regAppSections", regAppSections);
  
    		List<ExtraPatientIdentifierType> extraPatientIdentifierTypes = new ArrayList<ExtraPatientIdentifierType>();
@@ -150,6 +151,13 @@ public class PatientHeaderFragmentController {
 	}
 	
 	protected List<RegistrationSectionData> getRegistrationData(List<AppDescriptor> regAppDescriptors, final DataContextWrapper dataContext) {
+		return getRegistrationData(regAppDescriptors, dataContext, null);
+	}
+	
+	/**
+	 * @param coreAppsDAO When not null, the latest obs of all the obs fields are fetched at once through it.
+	 */
+	protected List<RegistrationSectionData> getRegistrationData(List<AppDescriptor> regAppDescriptors, final DataContextWrapper dataContext, final CoreAppsDAO coreAppsDAO) {
 		
 		if (CollectionUtils.isEmpty(regAppDescriptors)) {
 			throw new APIException("No Registration App instance enabled.");
@@ -166,13 +174,16 @@ public class PatientHeaderFragmentController {
 		// First: filling the registration data structure
 		RegistrationDataHelper dataHelper = new RegistrationDataHelper();
 		try {
-			sections = dataHelper.getSectionsFromConfig(regAppDesc.getConfig());
+			sections = dataHelper.getSectionsFromConfig(regAppDesc.getId(), regAppDesc.getConfig());
 		} catch (Exception e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
 		
 		// Second: fetching the registration data
+		if (coreAppsDAO != null) {
+			dataContext.prefetchLatestObs(coreAppsDAO, sections);
+		}
 		for (RegistrationSectionData section : sections) {
 			section.fetchData(dataContext);
 			Extension linkExtension = new Extension();
@@ -192,44 +203,14 @@ public class PatientHeaderFragmentController {
 		return sections;
 	}
 
-    private Map<String,String> getNames(PersonName personName) {
-
-    	NameSupportCompatibility nameSupport = Context.getRegisteredComponent("coreapps.NameSupportCompatibility", NameSupportCompatibility.class);
-    	
-        Map<String, String> nameFields = new LinkedHashMap<String, String>();
-        List<List<Map<String, String>>> lines = nameSupport.getLines();
-        String layoutToken = nameSupport.getLayoutToken();
-
+    private Map<String,String> getNames(NameSupportCompatibility nameSupport, PersonName personName) {
         // note that the assumption is one one field per "line", otherwise the labels that appear under each field may not render properly
         try {
-            for (List<Map<String, String>> line : lines) {
-                String nameLabel = "";
-                String nameLine = "";
-                Boolean hasToken = false;
-                for (Map<String, String> lineToken : line) {
-                    if (lineToken.get("isToken").equals(layoutToken)) {
-                        String tokenValue = BeanUtils.getProperty(personName, lineToken.get("codeName"));
-                        nameLabel = nameSupport.getNameMappings().get(lineToken.get("codeName"));
-                        if (StringUtils.isNotBlank(tokenValue)) {
-                            hasToken = true;
-                            nameLine += tokenValue;
-                        }
-                    }
-                    else {
-                        nameLine += lineToken.get("displayText");
-                    }
-                }
-                // only display a line if there's a token within it we've been able to resolve
-                if (StringUtils.isNotBlank(nameLine) && hasToken) {
-                    nameFields.put(nameLabel, nameLine);
-                }
-            }
-            return nameFields;
+            return nameSupport.getNameLayout().format(personName);
         }
         catch (Exception e) {
             throw new APIException("Unable to generate name fields for patient header", e);
         }
-
     }
 	
 	public class ExtraPatientIdentifierType {
@@ -19,8 +19,7 @@ import org.openmrs.module.appframework.domain.AppDescriptor;
 import org.openmrs.module.appframework.template.TemplateFactory;
 import org.openmrs.module.appui.UiSessionContext;
 import org.openmrs.module.coreapps.CoreAppsProperties;
-import org.openmrs.module.coreapps.contextmodel.PatientContextModel;
-import org.openmrs.module.coreapps.contextmodel.VisitContextModel;
+import org.openmrs.module.coreapps.helper.ContextModels;
 import org.openmrs.module.emrapi.patient.PatientDomainWrapper;
 import org.openmrs.module.emrapi.visit.VisitDomainWrapper;
 import org.openmrs.ui.framework.UiUtils;
@@ -58,7 +57,8 @@ public class VisitsSectionFragmentController {
 		}
 
 		AppContextModel contextModel = sessionContext.generateAppContextModel();
-		contextModel.put("patient", new PatientContextModel(patientWrapper.getPatient()));
+		ContextModels contextModels = ContextModels.getInstance();
+		contextModel.put("patient", contextModels.getPatientContextModel(patientWrapper.getPatient()));
 
 		AppDescriptor app = (AppDescriptor) pageModel.get("app");
 		String visitsPageWithSpecificVisitUrl = null;
@@ -94,7 +94,7 @@ public class VisitsSectionFragmentController {
 
 		Map<VisitDomainWrapper, String> recentVisitsWithLinks = new LinkedHashMap<VisitDomainWrapper, String>();
 		for (VisitDomainWrapper recentVisit : recentVisits) {
-			contextModel.put("visit", new VisitContextModel(recentVisit));
+			contextModel.put("visit", contextModels.getVisitContextModel(recentVisit));
             // since the "recentVisit" isn't part of the context module, we bind it first to the visit url, before doing the handlebars binding against the context
 			recentVisitsWithLinks.put(recentVisit, templateFactory.handlebars(ui.urlBind(visitsPageWithSpecificVisitUrl, recentVisit.getVisit()), contextModel));
 		}
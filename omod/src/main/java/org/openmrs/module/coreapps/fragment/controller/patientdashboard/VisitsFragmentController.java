@@ -0,0 +1,60 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.coreapps.fragment.controller.patientdashboard;
+
+import org.openmrs.Patient;
+import org.openmrs.module.appui.UiSessionContext;
+import org.openmrs.module.coreapps.cache.VisitListCache;
+import org.openmrs.module.emrapi.patient.PatientDomainWrapper;
+import org.openmrs.ui.framework.SimpleObject;
+import org.openmrs.ui.framework.UiUtils;
+import org.openmrs.ui.framework.annotation.InjectBeans;
+import org.openmrs.ui.framework.annotation.SpringBean;
+import org.openmrs.ui.framework.fragment.FragmentConfiguration;
+import org.openmrs.ui.framework.fragment.FragmentModel;
+import org.openmrs.ui.framework.page.PageAction;
+
+/**
+ * The visits tab of the patient dashboard. The visit list only changes when the patient's visits do, so its markup
+ * is rendered by the patientdashboard/visitsList fragment and cached (see {@link VisitListCache}).
+ */
+public class VisitsFragmentController {
+
+	public void controller(FragmentConfiguration config,
+	                       @InjectBeans PatientDomainWrapper wrapper,
+	                       @SpringBean("coreapps.visitListCache") VisitListCache visitListCache,
+	                       UiSessionContext sessionContext,
+	                       UiUtils ui,
+	                       FragmentModel model) throws PageAction {
+
+		config.require("patient");
+		Object patient = config.get("patient");
+		if (patient instanceof Patient) {
+			wrapper.setPatient((Patient) patient);
+			config.addAttribute("patient", wrapper);
+		} else {
+			wrapper = (PatientDomainWrapper) patient;
+		}
+
+		String visitListKey = visitListCache.getKey(wrapper.getPatient(), sessionContext.getCurrentUser(),
+		    sessionContext.getLocale());
+		String visitList = visitListCache.get(visitListKey);
+		if (visitList == null) {
+			visitList = ui.includeFragment("coreapps", "patientdashboard/visitsList", SimpleObject.create("patient", wrapper));
+			visitListCache.put(visitListKey, visitList);
+		}
+		model.addAttribute("visitList", visitList);
+	}
+}
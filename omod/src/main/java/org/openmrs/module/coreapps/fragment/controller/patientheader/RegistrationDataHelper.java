@@ -16,11 +16,15 @@ package org.openmrs.module.coreapps.fragment.controller.patientheader;
 
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.beanutils.BeanUtils;
 import org.apache.commons.collections.CollectionUtils;
@@ -41,6 +45,8 @@ import org.openmrs.api.ConceptService;
 import org.openmrs.api.LocationService;
 import org.openmrs.api.ObsService;
 import org.openmrs.module.appframework.domain.Extension;
+import org.openmrs.module.coreapps.cache.ConceptMappingCache;
+import org.openmrs.module.coreapps.db.CoreAppsDAO;
 import org.openmrs.module.emrapi.patient.PatientDomainWrapper;
 
 import com.thoughtworks.xstream.XStream;
@@ -75,6 +81,8 @@ public class RegistrationDataHelper {
 		private LocationService locationService;
 		private PatientDomainWrapper patientWrapper;
 		private Map<String, PersonAttribute> attrMap = new HashMap<String, PersonAttribute>();
+		private ConceptMappingCache conceptMappingCache;
+		private Map<Integer, Obs> latestObs;	// by concept id, null unless prefetched
 		
 		public DataContextWrapper(Locale locale, PatientDomainWrapper patientWrapper, ConceptService conceptService, ObsService obsService, LocationService locationService) {
 			super();
@@ -120,6 +128,56 @@ public class RegistrationDataHelper {
 			return attrMap;
 		}
 		
+		/**
+		 * @param conceptMappingCache Used, when set, to look up the concepts of the obs fields.
+		 */
+		public void setConceptMappingCache(ConceptMappingCache conceptMappingCache) {
+			this.conceptMappingCache = conceptMappingCache;
+		}
+		
+		/**
+		 * Fetches the patient's latest obs for all the obs fields of the sections in a single query, rather than
+		 * fetching all the obs of each field's concept when the field's data is fetched.
+		 * @param sections The sections whose obs fields' data will be fetched.
+		 */
+		public void prefetchLatestObs(final CoreAppsDAO coreAppsDAO, final List<RegistrationSectionData> sections) {
+			
+			Set<Concept> concepts = new HashSet<Concept>();
+			for (RegistrationSectionData section : sections) {
+				if (section.getQuestions() == null) {
+					continue;
+				}
+				for (RegistrationQuestionData question : section.getQuestions()) {
+					if (question.getFields() == null) {
+						continue;
+					}
+					for (RegistrationFieldData field : question.getFields()) {
+						if (field.getType().equals("obs")) {
+							Concept concept = getConceptFromFormFieldName(field.getFormFieldName());
+							if (concept != null) {
+								concepts.add(concept);
+							}
+						}
+					}
+				}
+			}
+			latestObs = coreAppsDAO.getLatestObsByConcept(patientWrapper.getPatient(), concepts);
+		}
+		
+		/**
+		 * @return true if the latest obs were fetched with {@link #prefetchLatestObs}.
+		 */
+		public boolean isLatestObsPrefetched() {
+			return latestObs != null;
+		}
+		
+		/**
+		 * @return The prefetched latest obs of the concept, or null if the patient has none.
+		 */
+		public Obs getLatestObs(Concept concept) {
+			return latestObs == null ? null : latestObs.get(concept.getConceptId());
+		}
+		
 		/**
 		 * @param formFieldName Typically a string such as "obs.CIEL:12345"
 		 * @return null when no Concept could be found
@@ -142,7 +200,12 @@ public class RegistrationDataHelper {
 					if (split.length == 2) {
 						conceptSource = split[0];
 						conceptCode = split[1];
-						concept = conceptService.getConceptByMapping(conceptCode, conceptSource);
+						if (conceptMappingCache != null) {
+							concept = conceptMappingCache.getConceptByMapping(conceptCode, conceptSource);
+						}
+						else {
+							concept = conceptService.getConceptByMapping(conceptCode, conceptSource);
+						}
 					}
 					else {
 						log.warn(warnMsg);
@@ -240,6 +303,18 @@ public class RegistrationDataHelper {
 			super();
 		}
 
+		/**
+		 * @return a new field with the properties mapped from the config JSON, but none of the fetched data
+		 */
+		RegistrationFieldData copyTemplate() {
+			RegistrationFieldData copy = new RegistrationFieldData();
+			copy.uuid = uuid;
+			copy.type = type;
+			copy.label = label;
+			copy.formFieldName = formFieldName;
+			return copy;
+		}
+
 		public String getUuid() {
 			return uuid;
 		}
@@ -333,7 +408,14 @@ public class RegistrationDataHelper {
 			String dataType = conceptQuestion.getDatatype().getName(); 
 			if (dataType.equals(CONCEPT_CODED)) {
 				
-				List<Obs> obsList = dataContext.getObsService().getObservationsByPersonAndConcept( dataContext.getPatientWrapper().getPatient(), conceptQuestion );
+				List<Obs> obsList;
+				if (dataContext.isLatestObsPrefetched()) {
+					Obs latestObs = dataContext.getLatestObs(conceptQuestion);
+					obsList = (latestObs == null) ? Collections.<Obs>emptyList() : Collections.singletonList(latestObs);
+				}
+				else {
+					obsList = dataContext.getObsService().getObservationsByPersonAndConcept( dataContext.getPatientWrapper().getPatient(), conceptQuestion );
+				}
 				String answer = "";
 				if (CollectionUtils.isEmpty(obsList) == false) {
 					Obs obs = obsList.get(0);
@@ -379,17 +461,49 @@ public class RegistrationDataHelper {
 			}
 		}
 		
-		protected Map<String, String> getAddressTemplateNameMappings(final LocationService locationService) {
+		/*
+		 * Configured once, XStream can be shared by all threads.
+		 */
+		private static final XStream addressTemplateXStream = new XStream();
+		
+		static {
+			addressTemplateXStream.alias("org.openmrs.layout.web.address.AddressTemplate", java.util.Map.class);
+			addressTemplateXStream.registerConverter(new AddressTemplateConverter());
+		}
+		
+		/*
+		 * The name mappings of the last address template parsed, along with its XML.
+		 */
+		private static volatile AddressTemplateNameMappings addressTemplateNameMappings;
+		
+		private static class AddressTemplateNameMappings {
 			
-			XStream xstream = new XStream();
-			xstream.alias("org.openmrs.layout.web.address.AddressTemplate", java.util.Map.class);
-			xstream.registerConverter(new AddressTemplateConverter());
+			private final String addressTemplateXml;
+			private final Map<String, String> nameMappings;
+			
+			AddressTemplateNameMappings(String addressTemplateXml, Map<String, String> nameMappings) {
+				this.addressTemplateXml = addressTemplateXml;
+				this.nameMappings = nameMappings;
+			}
+		}
+		
+		/**
+		 * The Address Template XML is only parsed again when it has changed.
+		 * @return The Address Template's name mappings, in the XML order, which must not be modified.
+		 */
+		protected Map<String, String> getAddressTemplateNameMappings(final LocationService locationService) {
 			
 			String addressTemplateXml = locationService.getAddressTemplate();
-			@SuppressWarnings("unchecked")
-			Map<String, String> nameMappings = (Map<String, String>) xstream.fromXML(addressTemplateXml);
 			
-			return nameMappings;
+			AddressTemplateNameMappings cached = addressTemplateNameMappings;
+			if (cached == null || !StringUtils.equals(cached.addressTemplateXml, addressTemplateXml)) {
+				@SuppressWarnings("unchecked")
+				Map<String, String> nameMappings = (Map<String, String>) addressTemplateXStream.fromXML(addressTemplateXml);
+				cached = new AddressTemplateNameMappings(addressTemplateXml, Collections.unmodifiableMap(nameMappings));
+				addressTemplateNameMappings = cached;
+			}
+			
+			return cached.nameMappings;
 		}
 		
 		protected boolean fetchAddressData(final DataContextWrapper dataContext) {
@@ -436,6 +550,21 @@ public class RegistrationDataHelper {
 			super();
 		}
 
+		/**
+		 * @return a new question with the properties mapped from the config JSON, but none of the fetched data
+		 */
+		RegistrationQuestionData copyTemplate() {
+			RegistrationQuestionData copy = new RegistrationQuestionData();
+			copy.legend = legend;
+			if (fields != null) {
+				copy.fields = new ArrayList<RegistrationFieldData>();
+				for (RegistrationFieldData field : fields) {
+					copy.fields.add(field.copyTemplate());
+				}
+			}
+			return copy;
+		}
+
 		public String getLegend() {
 			return legend;
 		}
@@ -474,6 +603,23 @@ public class RegistrationDataHelper {
 			super();
 		}
 
+		/**
+		 * @return a new section with the properties mapped from the config JSON, but none of the fetched data
+		 */
+		RegistrationSectionData copyTemplate() {
+			RegistrationSectionData copy = new RegistrationSectionData();
+			copy.id = id;
+			copy.label = label;
+			copy.onPatientHeader = onPatientHeader;
+			if (questions != null) {
+				copy.questions = new ArrayList<RegistrationQuestionData>();
+				for (RegistrationQuestionData question : questions) {
+					copy.questions.add(question.copyTemplate());
+				}
+			}
+			return copy;
+		}
+
 		public String getId() {
 			return id;
 		}
@@ -545,13 +691,48 @@ public class RegistrationDataHelper {
 	}
 	
 	/*
-	 * 
+	 * The sections parsed from each registration app's config, by app id. The config of an app is only parsed again
+	 * when it is a different config object, i.e. when the apps have been reloaded.
 	 */
+	private static final Map<String, ParsedSections> parsedSections = new ConcurrentHashMap<String, ParsedSections>();
+	
+	private static class ParsedSections {
+		
+		private final ObjectNode config;
+		private final List<RegistrationSectionData> sections;
+		
+		ParsedSections(ObjectNode config, List<RegistrationSectionData> sections) {
+			this.config = config;
+			this.sections = sections;
+		}
+	}
 	
 	public RegistrationDataHelper() {
 		super();
 	}
 	
+	/**
+	 * Same as {@link #getSectionsFromConfig(ObjectNode)}, but the config is only parsed the first time it is seen for
+	 * the app. The sections returned are copies of the parsed ones, to which the patient's data can be fetched.
+	 * @param appId The Registration App's id.
+	 * @param config The Registration App's config.
+	 * @return A model-ready list of sections data.
+	 */
+	public List<RegistrationSectionData> getSectionsFromConfig(final String appId, final ObjectNode config) {
+		
+		ParsedSections parsed = parsedSections.get(appId);
+		if (parsed == null || parsed.config != config) {
+			parsed = new ParsedSections(config, getSectionsFromConfig(config));
+			parsedSections.put(appId, parsed);
+		}
+		
+		List<RegistrationSectionData> sections = new ArrayList<RegistrationSectionData>();
+		for (RegistrationSectionData section : parsed.sections) {
+			sections.add(section.copyTemplate());
+		}
+		return sections;
+	}
+	
 	/**
 	 * Retrieves the Registration App's data following the sections & fields app's structure.
 	 * @param config The Registration App's config.
@@ -14,10 +14,12 @@
 package org.openmrs.module.coreapps.fragment.controller.visit;
 
 import org.openmrs.Encounter;
-import org.openmrs.Location;
 import org.openmrs.Obs;
 import org.openmrs.Order;
 import org.openmrs.api.LocationService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.coreapps.OrderCompatibility;
+import org.openmrs.module.coreapps.cache.LocationCache;
 import org.openmrs.module.emrapi.EmrApiProperties;
 import org.openmrs.module.emrapi.diagnosis.Diagnosis;
 import org.openmrs.module.emrapi.diagnosis.DiagnosisMetadata;
@@ -26,8 +28,6 @@ import org.openmrs.module.emrapi.disposition.DispositionService;
 import org.openmrs.ui.framework.SimpleObject;
 import org.openmrs.ui.framework.UiUtils;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -46,6 +46,10 @@ public class ParserEncounterIntoSimpleObjects {
 
     private DispositionService dispositionService;
 
+    private LocationCache locationCache;
+
+    private OrderCompatibility orderCompatibility;
+
     public ParserEncounterIntoSimpleObjects(Encounter encounter, UiUtils uiUtils, EmrApiProperties emrApiProperties,
                                             LocationService locationService, DispositionService dispositionService) {
         this.encounter = encounter;
@@ -54,44 +58,53 @@ public class ParserEncounterIntoSimpleObjects {
         this.locationService = locationService;
         this.dispositionService = dispositionService;
     }
+
+    /**
+     * @param locationCache if set, location answers are formatted by this cache rather than looked up through the
+     *            LocationService
+     */
+    public void setLocationCache(LocationCache locationCache) {
+        this.locationCache = locationCache;
+    }
+
+    /**
+     * @param orderCompatibility used to work out the number to display for orders, looked up if not set
+     */
+    public void setOrderCompatibility(OrderCompatibility orderCompatibility) {
+        this.orderCompatibility = orderCompatibility;
+    }
 	
 	public List<SimpleObject> parseOrders() {
 		List<SimpleObject> orders = new ArrayList<SimpleObject>();
 
-        // hacky reflection to allow core 1.9 compatibility, which doesn't support order.orderNumber
-        Method getOrderNumber = null;
-        for (Method m :  new Order().getClass().getMethods()) {
-            if (m.getName().equals("getOrderNumber")) {
-                getOrderNumber = m;
-                break;
-            }
+        // prior to 1.10 we display accession number, 1.10+ we display order number
+        if (orderCompatibility == null) {
+            orderCompatibility = Context.getRegisteredComponent("coreapps.OrderCompatibility", OrderCompatibility.class);
         }
 
 		for (Order order : encounter.getOrders()) {
-            try {
-                orders.add(SimpleObject.create("concept", uiUtils.format(order.getConcept()),
-                        "orderNumber", uiUtils.format(getOrderNumber != null ? getOrderNumber.invoke(order) : order.getAccessionNumber()))); // prior to 1.10 we display accession number, 1.10+ we display order number
-            }
-            // fail softly for now
-            catch (IllegalAccessException e) {
-            }
-            catch (InvocationTargetException e) {
-            }
+            orders.add(SimpleObject.create("concept", uiUtils.format(order.getConcept()),
+                    "orderNumber", uiUtils.format(orderCompatibility.getOrderNumber(order))));
         }
 
 		return orders;
 	}
 
 	public ParsedObs parseObservations(Locale locale) {
-		DiagnosisMetadata diagnosisMetadata = emrApiProperties.getDiagnosisMetadata();
-		DispositionDescriptor dispositionDescriptor = null;
-        try {
-            dispositionDescriptor = dispositionService.getDispositionDescriptor();
-        } catch (IllegalStateException ex) {
-            // No problem. We do not require dispositions to be configured here
-        }
-		
+		return parseObservations(locale, emrApiProperties.getDiagnosisMetadata(),
+		    getDispositionDescriptor(dispositionService));
+	}
+
+	/**
+	 * Same as {@link #parseObservations(Locale)}, with the diagnosis and disposition metadata already looked up, so
+	 * that they can be shared when parsing several encounters
+	 *
+	 * @param dispositionDescriptor may be null if dispositions are not configured
+	 */
+	public ParsedObs parseObservations(Locale locale, DiagnosisMetadata diagnosisMetadata,
+	                                   DispositionDescriptor dispositionDescriptor) {
 		ParsedObs parsedObs = new ParsedObs();
+		List<ObsSortKey> otherObs = new ArrayList<ObsSortKey>();
 		
 		for (Obs obs : encounter.getObsAtTopLevel(false)) {
 			if (diagnosisMetadata.isDiagnosis(obs)) {
@@ -99,17 +112,15 @@ public class ParserEncounterIntoSimpleObjects {
 			} else if (dispositionDescriptor != null && dispositionDescriptor.isDisposition(obs)) {
 				parsedObs.getDispositions().add(parseDisposition(dispositionDescriptor, obs, locale));
 			} else {
-                parsedObs.getObs().add(parseObs(obs, locale));
+                otherObs.add(new ObsSortKey(obs));
             }
 		}
 
         // just sort the obs by obsId--not perfect, but a decent "natural" object
-        Collections.sort(parsedObs.getObs(), new Comparator<SimpleObject>() {
-            @Override
-            public int compare(SimpleObject o1, SimpleObject o2) {
-                return (Integer) o1.get("obsId") < (Integer) o2.get("obsId") ? -1 : 1;
-            }
-        });
+        Collections.sort(otherObs);
+        for (ObsSortKey sortKey : otherObs) {
+            parsedObs.getObs().add(parseObs(sortKey.obs, locale));
+        }
 		
 		Collections.sort(parsedObs.getDiagnoses(), new Comparator<SimpleObject>() {
 			
@@ -124,9 +135,22 @@ public class ParserEncounterIntoSimpleObjects {
 		return parsedObs;
 	}
 	
+	/**
+	 * @return the disposition descriptor, or null if dispositions are not configured
+	 */
+	static DispositionDescriptor getDispositionDescriptor(DispositionService dispositionService) {
+		try {
+			return dispositionService.getDispositionDescriptor();
+		}
+		catch (IllegalStateException ex) {
+			// No problem. We do not require dispositions to be configured here
+			return null;
+		}
+	}
+
 	private SimpleObject parseObs(Obs obs, Locale locale) {
         if ("org.openmrs.Location".equals(obs.getComment())) {
-            return (parseObsWithLocationAnswer(obs, locationService.getLocation(Integer.valueOf(obs.getValueText()))));
+            return (parseObsWithLocationAnswer(obs, formatLocationAnswer(obs)));
         }
         else {
             SimpleObject simpleObject = SimpleObject.create("obsId", obs.getObsId());
@@ -151,12 +175,12 @@ public class ParserEncounterIntoSimpleObjects {
 
         if (admissionLocationObs != null) {
             simplifiedAdditionalObs.add(parseObsWithLocationAnswer(admissionLocationObs,
-                    dispositionDescriptor.getAdmissionLocation(obs, locationService)));
+                    formatLocationAnswer(admissionLocationObs)));
         }
 
         if (internalTransferLocationObs != null) {
             simplifiedAdditionalObs.add(parseObsWithLocationAnswer(internalTransferLocationObs,
-                    dispositionDescriptor.getInternalTransferLocation(obs, locationService)));
+                    formatLocationAnswer(internalTransferLocationObs)));
         }
 
         if (dateOfDeathObs != null) {
@@ -178,23 +202,32 @@ public class ParserEncounterIntoSimpleObjects {
 		answer += diagnosis.getDiagnosis().formatWithCode(uiUtils.getLocale(),
 		    emrApiProperties.getConceptSourcesForDiagnosisSearch());
 		
-		SimpleObject simpleObject = SimpleObject.fromObject(obs, uiUtils, "obsId");
+		SimpleObject simpleObject = SimpleObject.create("obsId", obs.getObsId());
 		simpleObject.put("question", formatDiagnosisQuestion(diagnosis.getOrder()));
 		simpleObject.put("answer", answer);
 		simpleObject.put("order", diagnosis.getOrder().ordinal());
 		return simpleObject;
 	}
 
-    private SimpleObject parseObsWithLocationAnswer(Obs obs, Location location) {
+    private SimpleObject parseObsWithLocationAnswer(Obs obs, String formattedLocation) {
 
         SimpleObject simpleObject = SimpleObject.create("obsId", obs.getObsId());
 
         simpleObject.put("question", capitalizeString(uiUtils.format(obs.getConcept())));
-        simpleObject.put("answer", uiUtils.format(location));
+        simpleObject.put("answer", formattedLocation);
         return simpleObject;
 
     }
 
+    /**
+     * Location answers are stored as the location id in valueText
+     */
+    private String formatLocationAnswer(Obs obs) {
+        Integer locationId = Integer.valueOf(obs.getValueText());
+        return locationCache != null ? locationCache.format(locationId, uiUtils)
+                : uiUtils.format(locationService.getLocation(locationId));
+    }
+
 	private String formatDiagnosisQuestion(Diagnosis.Order order) {
 		return uiUtils.message("coreapps.patientDashBoard.diagnosisQuestion." + order);
 	}
@@ -202,5 +235,25 @@ public class ParserEncounterIntoSimpleObjects {
 	private String capitalizeString(String name) {
 		return name.substring(0, 1).toUpperCase() + name.substring(1).toLowerCase();
 	}
+
+    /**
+     * Sorts obs by obsId (unsaved obs last) without unboxing the id on every comparison
+     */
+    private static class ObsSortKey implements Comparable<ObsSortKey> {
+
+        private final int obsId;
+
+        private final Obs obs;
+
+        ObsSortKey(Obs obs) {
+            this.obsId = obs.getObsId() == null ? Integer.MAX_VALUE : obs.getObsId();
+            this.obs = obs;
+        }
+
+        @Override
+        public int compareTo(ObsSortKey other) {
+            return obsId < other.obsId ? -1 : (obsId == other.obsId ? 0 : 1);
+        }
+    }
 	
 }
@@ -25,13 +25,19 @@ import org.openmrs.module.appframework.domain.Extension;
 import org.openmrs.module.appframework.service.AppFrameworkService;
 import org.openmrs.module.appui.UiSessionContext;
 import org.openmrs.module.coreapps.CoreAppsConstants;
-import org.openmrs.module.coreapps.contextmodel.PatientContextModel;
-import org.openmrs.module.coreapps.contextmodel.VisitContextModel;
+import org.openmrs.module.coreapps.OrderCompatibility;
+import org.openmrs.module.coreapps.cache.LocationCache;
+import org.openmrs.module.coreapps.db.CoreAppsDAO;
+import org.openmrs.module.coreapps.helper.ContextModels;
+import org.openmrs.module.coreapps.helper.ExtensionResolver;
+import org.openmrs.module.coreapps.parser.EncounterPermissionEvaluator;
 import org.openmrs.module.coreapps.parser.ParseEncounterToJson;
+import org.openmrs.module.coreapps.parser.SimpleObjectTemplate;
 import org.openmrs.module.emrapi.EmrApiConstants;
 import org.openmrs.module.emrapi.EmrApiProperties;
+import org.openmrs.module.emrapi.diagnosis.DiagnosisMetadata;
+import org.openmrs.module.emrapi.disposition.DispositionDescriptor;
 import org.openmrs.module.emrapi.disposition.DispositionService;
-import org.openmrs.module.emrapi.encounter.EncounterDomainWrapper;
 import org.openmrs.module.emrapi.visit.VisitDomainWrapper;
 import org.openmrs.ui.framework.SimpleObject;
 import org.openmrs.ui.framework.UiUtils;
@@ -43,23 +49,25 @@ import org.springframework.web.bind.annotation.RequestParam;
 
 import java.text.ParseException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
 public class VisitDetailsFragmentController {
 
-
+    private static final SimpleObjectTemplate VISIT_TEMPLATE = new SimpleObjectTemplate("id", "uuid", "location");
 
     public SimpleObject getVisitDetails(@SpringBean("emrApiProperties") EmrApiProperties emrApiProperties,
                                         @SpringBean("appFrameworkService") AppFrameworkService appFrameworkService,
                                         @SpringBean("encounterService") EncounterService encounterService,
-                                        @RequestParam("visitId") Visit visit, UiUtils uiUtils,
+                                        @SpringBean("coreAppsDAO") CoreAppsDAO coreAppsDAO,
+                                        @RequestParam("visitId") Visit visit,
+                                        @RequestParam(value = "encounterLimit", required = false) Integer encounterLimit,
+                                        UiUtils uiUtils,
                                         UiSessionContext sessionContext) throws ParseException {
 
         ParseEncounterToJson parseEncounterToJson = new ParseEncounterToJson(appFrameworkService, uiUtils, encounterService);
 
-        SimpleObject simpleObject = SimpleObject.fromObject(visit, uiUtils, "id", "uuid", "location");
+        SimpleObject simpleObject = VISIT_TEMPLATE.toSimpleObject(visit, uiUtils);
 
         User authenticatedUser = sessionContext.getCurrentUser();
 
@@ -78,26 +86,75 @@ public class VisitDetailsFragmentController {
 
         VisitDomainWrapper visitWrapper = new VisitDomainWrapper(visit, emrApiProperties);
 
-        List<SimpleObject> encounters = new ArrayList<SimpleObject>();
-        for (Encounter encounter : visitWrapper.getSortedEncounters()) {
-            encounters.add(parseEncounterToJson.createEncounterJSON(authenticatedUser, encounter));
-        }
-        simpleObject.put("encounters", encounters);
+        EncounterPermissionEvaluator encounterPermissions = new EncounterPermissionEvaluator(authenticatedUser,
+                coreAppsDAO.getEncounterIdsParticipatedIn(visit, authenticatedUser));
+
+        SimpleObject firstPage = getPageOfEncounters(coreAppsDAO, visit, 0, encounterLimit, parseEncounterToJson,
+                encounterPermissions);
+        simpleObject.put("encounters", firstPage.get("encounters"));
+        simpleObject.put("encounterCount", firstPage.get("totalCount"));
+        simpleObject.put("hasMoreEncounters", firstPage.get("hasMore"));
 
         simpleObject.put("admitted", visitWrapper.isAdmitted());
         simpleObject.put("canDeleteVisit", verifyIfUserHasPermissionToDeleteVisit(visit, authenticatedUser, canDeleteVisit));
 
         AppContextModel contextModel = sessionContext.generateAppContextModel();
-        contextModel.put("patient", new PatientContextModel(visit.getPatient()));
-        contextModel.put("visit", new VisitContextModel(new VisitDomainWrapper(visit, emrApiProperties)));
+        ContextModels contextModels = ContextModels.getInstance();
+        contextModel.put("patient", contextModels.getPatientContextModel(visit.getPatient()));
+        contextModel.put("visit", contextModels.getVisitContextModel(visitWrapper));
 
-        List<Extension> visitActions = appFrameworkService.getExtensionsForCurrentUser("patientDashboard.visitActions", contextModel);
-        Collections.sort(visitActions);
+        List<Extension> visitActions = ExtensionResolver.getInstance(appFrameworkService).getSortedExtensions(
+                "patientDashboard.visitActions", contextModel);
         simpleObject.put("availableVisitActions", convertVisitActionsToSimpleObject(visitActions));
 
         return simpleObject;
     }
 
+    /**
+     * Returns a page of the encounters of a visit, in the same (most recent first) order as {@link #getVisitDetails},
+     * so that very long visits can be loaded incrementally
+     */
+    public SimpleObject getVisitEncounters(@SpringBean("appFrameworkService") AppFrameworkService appFrameworkService,
+                                           @SpringBean("encounterService") EncounterService encounterService,
+                                           @SpringBean("coreAppsDAO") CoreAppsDAO coreAppsDAO,
+                                           @RequestParam("visitId") Visit visit,
+                                           @RequestParam(value = "offset", defaultValue = "0") Integer offset,
+                                           @RequestParam(value = "limit", defaultValue = "20") Integer limit,
+                                           UiUtils uiUtils,
+                                           UiSessionContext sessionContext) {
+
+        ParseEncounterToJson parseEncounterToJson = new ParseEncounterToJson(appFrameworkService, uiUtils, encounterService);
+
+        User authenticatedUser = sessionContext.getCurrentUser();
+
+        EncounterPermissionEvaluator encounterPermissions = new EncounterPermissionEvaluator(authenticatedUser,
+                coreAppsDAO.getEncounterIdsParticipatedIn(visit, authenticatedUser));
+
+        return getPageOfEncounters(coreAppsDAO, visit, offset, limit, parseEncounterToJson, encounterPermissions);
+    }
+
+    /**
+     * Only loads the requested page of encounters (with everything we display about them up front, rather than one
+     * lazy proxy at a time), and counts the others
+     *
+     * @param limit the maximum number of encounters to include, or null to include all of them from offset onwards
+     */
+    private SimpleObject getPageOfEncounters(CoreAppsDAO coreAppsDAO, Visit visit, int offset, Integer limit,
+                                             ParseEncounterToJson parseEncounterToJson,
+                                             EncounterPermissionEvaluator encounterPermissions) {
+        int from = Math.max(offset, 0);
+        List<Encounter> page = coreAppsDAO.getEncountersWithDetails(visit, from, limit == null ? null : Math.max(limit, 0));
+        int totalCount = coreAppsDAO.getEncounterCount(visit);
+
+        List<SimpleObject> encounters = new ArrayList<SimpleObject>();
+        for (Encounter encounter : page) {
+            encounters.add(parseEncounterToJson.createEncounterJSON(encounterPermissions, encounter));
+        }
+
+        return SimpleObject.create("encounters", encounters, "offset", from, "hasMore", from + page.size() < totalCount,
+                "totalCount", totalCount);
+    }
+
     private List<String> convertVisitActionsToSimpleObject(List<Extension> visitActions) {
 
         // just convert to a list of ids as strings
@@ -124,14 +181,66 @@ public class VisitDetailsFragmentController {
                                             @SpringBean("emrApiProperties") EmrApiProperties emrApiProperties,
                                             @SpringBean("locationService") LocationService locationService,
                                             @SpringBean("dispositionService") DispositionService dispositionService,
+                                            @SpringBean("coreapps.locationCache") LocationCache locationCache,
+                                            @SpringBean("coreapps.OrderCompatibility") OrderCompatibility orderCompatibility,
                                             UiUtils uiUtils) {
 
         ParserEncounterIntoSimpleObjects parserEncounter = new ParserEncounterIntoSimpleObjects(encounter, uiUtils,
                 emrApiProperties, locationService, dispositionService);
+        parserEncounter.setLocationCache(locationCache);
+        parserEncounter.setOrderCompatibility(orderCompatibility);
 
         ParsedObs parsedObs = parserEncounter.parseObservations(uiUtils.getLocale());
         List<SimpleObject> orders = parserEncounter.parseOrders();
 
+        return createEncounterDetails(parsedObs, orders);
+    }
+
+    /**
+     * Returns the same details as {@link #getEncounterDetails} for several encounters at once (e.g. to expand all the
+     * encounters of a visit), loading their obs and orders up front and looking up the diagnosis and disposition
+     * metadata only once
+     *
+     * @return encounter id -> encounter details
+     */
+    public SimpleObject getEncounterDetailsForEncounters(@RequestParam("encounterIds") List<Integer> encounterIds,
+                                                         @SpringBean("emrApiProperties") EmrApiProperties emrApiProperties,
+                                                         @SpringBean("locationService") LocationService locationService,
+                                                         @SpringBean("dispositionService") DispositionService dispositionService,
+                                                         @SpringBean("encounterService") EncounterService encounterService,
+                                                         @SpringBean("coreAppsDAO") CoreAppsDAO coreAppsDAO,
+                                                         @SpringBean("coreapps.locationCache") LocationCache locationCache,
+                                                         @SpringBean("coreapps.OrderCompatibility") OrderCompatibility orderCompatibility,
+                                                         UiUtils uiUtils) {
+
+        coreAppsDAO.getEncountersWithObsAndOrders(encounterIds);
+
+        DiagnosisMetadata diagnosisMetadata = emrApiProperties.getDiagnosisMetadata();
+        DispositionDescriptor dispositionDescriptor = ParserEncounterIntoSimpleObjects.getDispositionDescriptor(dispositionService);
+
+        SimpleObject encounterDetails = new SimpleObject();
+        for (Integer encounterId : encounterIds) {
+            // already in the session, this goes through the service so that the usual privilege checks apply
+            Encounter encounter = encounterService.getEncounter(encounterId);
+            if (encounter == null) {
+                continue;
+            }
+
+            ParserEncounterIntoSimpleObjects parserEncounter = new ParserEncounterIntoSimpleObjects(encounter, uiUtils,
+                    emrApiProperties, locationService, dispositionService);
+            parserEncounter.setLocationCache(locationCache);
+            parserEncounter.setOrderCompatibility(orderCompatibility);
+
+            ParsedObs parsedObs = parserEncounter.parseObservations(uiUtils.getLocale(), diagnosisMetadata,
+                    dispositionDescriptor);
+            List<SimpleObject> orders = parserEncounter.parseOrders();
+
+            encounterDetails.put(encounterId.toString(), createEncounterDetails(parsedObs, orders));
+        }
+        return encounterDetails;
+    }
+
+    private SimpleObject createEncounterDetails(ParsedObs parsedObs, List<SimpleObject> orders) {
         return SimpleObject.create("observations", parsedObs.getObs(), "orders", orders, "diagnoses",
                 parsedObs.getDiagnoses(), "dispositions", parsedObs.getDispositions());
     }
@@ -142,9 +251,7 @@ public class VisitDetailsFragmentController {
                                                 UiSessionContext sessionContext) {
 
         if (encounter != null) {
-            User authenticatedUser = sessionContext.getCurrentUser();
-            boolean canDelete = authenticatedUser.hasPrivilege(EmrApiConstants.PRIVILEGE_DELETE_ENCOUNTER);
-            if (verifyIfUserHasPermissionToDeleteAnEncounter(encounter, authenticatedUser, canDelete)) {
+            if (new EncounterPermissionEvaluator(sessionContext.getCurrentUser()).canDelete(encounter)) {
                 encounterService.voidEncounter(encounter, "delete encounter");
                 encounterService.saveEncounter(encounter);
             } else {
@@ -191,12 +298,4 @@ public class VisitDetailsFragmentController {
 		return new SuccessResult(ui.message("coreapps.task.endVisit.successMessage"));
 	}
 
-    private boolean verifyIfUserHasPermissionToDeleteAnEncounter(Encounter encounter, User authenticatedUser,
-                                                                   boolean canDelete) {
-        EncounterDomainWrapper encounterDomainWrapper = new EncounterDomainWrapper(encounter);
-        boolean userParticipatedInEncounter = encounterDomainWrapper.participatedInEncounter(authenticatedUser);
-        return canDelete || userParticipatedInEncounter;
-    }
-
-
 }
@@ -0,0 +1,69 @@
+package org.openmrs.module.coreapps.helper;
+
+import org.openmrs.Patient;
+import org.openmrs.Visit;
+import org.openmrs.module.coreapps.contextmodel.PatientContextModel;
+import org.openmrs.module.coreapps.contextmodel.VisitContextModel;
+import org.openmrs.module.emrapi.visit.VisitDomainWrapper;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Hands out the same patient and visit context models to every controller and fragment of a request, so that what
+ * the (lazily populated) models work out, e.g. whether a visit is admitted, is only worked out once per request.
+ */
+public class ContextModels {
+
+    private static final String REQUEST_ATTRIBUTE = ContextModels.class.getName();
+
+    private final Map<Patient, PatientContextModel> patients = new IdentityHashMap<Patient, PatientContextModel>();
+
+    private final Map<Visit, VisitContextModel> visits = new IdentityHashMap<Visit, VisitContextModel>();
+
+    /**
+     * @return the context models of the current request, or new ones (that only live as long as the caller keeps
+     *         them) if not called while handling a request
+     */
+    public static ContextModels getInstance() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return new ContextModels();
+        }
+
+        ContextModels contextModels = (ContextModels) attributes.getAttribute(REQUEST_ATTRIBUTE,
+                RequestAttributes.SCOPE_REQUEST);
+        if (contextModels == null) {
+            contextModels = new ContextModels();
+            attributes.setAttribute(REQUEST_ATTRIBUTE, contextModels, RequestAttributes.SCOPE_REQUEST);
+        }
+        return contextModels;
+    }
+
+    public PatientContextModel getPatientContextModel(Patient patient) {
+        PatientContextModel contextModel = patients.get(patient);
+        if (contextModel == null) {
+            contextModel = new PatientContextModel(patient);
+            patients.put(patient, contextModel);
+        }
+        return contextModel;
+    }
+
+    /**
+     * @return the context model of the given visit, or null if visit is null
+     */
+    public VisitContextModel getVisitContextModel(VisitDomainWrapper visit) {
+        if (visit == null) {
+            return null;
+        }
+
+        VisitContextModel contextModel = visits.get(visit.getVisit());
+        if (contextModel == null) {
+            contextModel = new VisitContextModel(visit);
+            visits.put(visit.getVisit(), contextModel);
+        }
+        return contextModel;
+    }
+}
@@ -0,0 +1,145 @@
+package org.openmrs.module.coreapps.helper;
+
+import org.openmrs.module.appframework.context.AppContextModel;
+import org.openmrs.module.appframework.domain.Extension;
+import org.openmrs.module.appframework.service.AppFrameworkService;
+import org.openmrs.module.coreapps.contextmodel.RequireExpressionEvaluator;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Looks up the current user's extensions at most once per request, so that a page controller and the fragments it
+ * includes don't each go back to the {@link AppFrameworkService} for (and sort) the same extension points. All the
+ * extensions available to the user are fetched in a single pass the first time any extension point is asked for,
+ * each list is sorted at most once, and callers get their own copy of it.
+ * <p/>
+ * Lookups against an {@link AppContextModel} are memoized per model instance, so a page should hand its
+ * appContextModel to the fragments it includes rather than have them build their own. The require expressions of the
+ * extensions are evaluated by a {@link RequireExpressionEvaluator}, and only those it cannot evaluate itself are left
+ * to the {@link AppFrameworkService}, once per extension point.
+ */
+public class ExtensionResolver {
+
+    private static final String REQUEST_ATTRIBUTE = ExtensionResolver.class.getName();
+
+    private final AppFrameworkService appFrameworkService;
+
+    private Map<String, List<Extension>> extensionsByPoint;
+
+    private final Map<String, List<Extension>> sortedExtensions = new HashMap<String, List<Extension>>();
+
+    private final Map<AppContextModel, Map<String, List<Extension>>> sortedExtensionsByContext =
+            new IdentityHashMap<AppContextModel, Map<String, List<Extension>>>();
+
+    private final Map<AppContextModel, RequireExpressionEvaluator> requireExpressionEvaluators =
+            new IdentityHashMap<AppContextModel, RequireExpressionEvaluator>();
+
+    public ExtensionResolver(AppFrameworkService appFrameworkService) {
+        this.appFrameworkService = appFrameworkService;
+    }
+
+    /**
+     * @return the resolver of the current request, or a new one (that only lives as long as the caller keeps it) if
+     *         not called while handling a request
+     */
+    public static ExtensionResolver getInstance(AppFrameworkService appFrameworkService) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return new ExtensionResolver(appFrameworkService);
+        }
+
+        ExtensionResolver resolver = (ExtensionResolver) attributes.getAttribute(REQUEST_ATTRIBUTE,
+                RequestAttributes.SCOPE_REQUEST);
+        if (resolver == null) {
+            resolver = new ExtensionResolver(appFrameworkService);
+            attributes.setAttribute(REQUEST_ATTRIBUTE, resolver, RequestAttributes.SCOPE_REQUEST);
+        }
+        return resolver;
+    }
+
+    /**
+     * @return the extensions of the given extension point available to the current user, in the order the
+     *         {@link AppFrameworkService} returns them
+     */
+    public List<Extension> getExtensions(String extensionPointId) {
+        return new ArrayList<Extension>(getExtensionsByPoint(extensionPointId));
+    }
+
+    /**
+     * @return the extensions of the given extension point available to the current user, sorted
+     */
+    public List<Extension> getSortedExtensions(String extensionPointId) {
+        List<Extension> sorted = sortedExtensions.get(extensionPointId);
+        if (sorted == null) {
+            sorted = new ArrayList<Extension>(getExtensionsByPoint(extensionPointId));
+            Collections.sort(sorted);
+            sortedExtensions.put(extensionPointId, sorted);
+        }
+        return new ArrayList<Extension>(sorted);
+    }
+
+    /**
+     * @return the extensions of the given extension point available to the current user whose require expressions
+     *         are met by the given context model, sorted
+     */
+    public List<Extension> getSortedExtensions(String extensionPointId, AppContextModel contextModel) {
+        Map<String, List<Extension>> sortedForContext = sortedExtensionsByContext.get(contextModel);
+        if (sortedForContext == null) {
+            sortedForContext = new HashMap<String, List<Extension>>();
+            sortedExtensionsByContext.put(contextModel, sortedForContext);
+        }
+
+        List<Extension> sorted = sortedForContext.get(extensionPointId);
+        if (sorted == null) {
+            RequireExpressionEvaluator evaluator = requireExpressionEvaluators.get(contextModel);
+            if (evaluator == null) {
+                evaluator = new RequireExpressionEvaluator(contextModel);
+                requireExpressionEvaluators.put(contextModel, evaluator);
+            }
+
+            sorted = new ArrayList<Extension>();
+            List<Extension> evaluatedByService = null;
+            for (Extension extension : getExtensionsByPoint(extensionPointId)) {
+                Boolean requireMet = evaluator.evaluate(extension.getRequire());
+                if (requireMet == null) {
+                    if (evaluatedByService == null) {
+                        evaluatedByService = appFrameworkService.getExtensionsForCurrentUser(extensionPointId,
+                                contextModel);
+                    }
+                    requireMet = evaluatedByService.contains(extension);
+                }
+                if (requireMet) {
+                    sorted.add(extension);
+                }
+            }
+            Collections.sort(sorted);
+            sortedForContext.put(extensionPointId, sorted);
+        }
+        return new ArrayList<Extension>(sorted);
+    }
+
+    private List<Extension> getExtensionsByPoint(String extensionPointId) {
+        if (extensionsByPoint == null) {
+            // a null extension point asks for the extensions of every extension point
+            extensionsByPoint = new HashMap<String, List<Extension>>();
+            for (Extension extension : appFrameworkService.getExtensionsForCurrentUser(null)) {
+                List<Extension> extensions = extensionsByPoint.get(extension.getExtensionPointId());
+                if (extensions == null) {
+                    extensions = new ArrayList<Extension>();
+                    extensionsByPoint.put(extension.getExtensionPointId(), extensions);
+                }
+                extensions.add(extension);
+            }
+        }
+
+        List<Extension> extensions = extensionsByPoint.get(extensionPointId);
+        return extensions == null ? Collections.<Extension>emptyList() : extensions;
+    }
+}
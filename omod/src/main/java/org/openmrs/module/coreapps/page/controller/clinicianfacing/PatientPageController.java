@@ -25,8 +25,8 @@ import org.openmrs.module.appframework.service.AppFrameworkService;
 import org.openmrs.module.appui.UiSessionContext;
 import org.openmrs.module.coreapps.CoreAppsConstants;
 import org.openmrs.module.coreapps.CoreAppsProperties;
-import org.openmrs.module.coreapps.contextmodel.PatientContextModel;
-import org.openmrs.module.coreapps.contextmodel.VisitContextModel;
+import org.openmrs.module.coreapps.helper.ContextModels;
+import org.openmrs.module.coreapps.helper.ExtensionResolver;
 import org.openmrs.module.emrapi.EmrApiProperties;
 import org.openmrs.module.emrapi.adt.AdtService;
 import org.openmrs.module.emrapi.event.ApplicationEventService;
@@ -39,7 +39,6 @@ import org.openmrs.ui.framework.page.Redirect;
 import org.springframework.web.bind.annotation.RequestParam;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 public class PatientPageController {
@@ -82,38 +81,30 @@ public class PatientPageController {
 		model.addAttribute("activeVisit", activeVisit);
 
         AppContextModel contextModel = sessionContext.generateAppContextModel();
-        contextModel.put("patient", new PatientContextModel(patient));
-        contextModel.put("visit", activeVisit == null ? null : new VisitContextModel(activeVisit));
+        ContextModels contextModels = ContextModels.getInstance();
+        contextModel.put("patient", contextModels.getPatientContextModel(patient));
+        contextModel.put("visit", contextModels.getVisitContextModel(activeVisit));
         model.addAttribute("appContextModel", contextModel);
 
-        List<Extension> overallActions = appFrameworkService.getExtensionsForCurrentUser("patientDashboard.overallActions", contextModel);
-        Collections.sort(overallActions);
-        model.addAttribute("overallActions", overallActions);
+        // the patient header and the other fragments of this page look up their extensions through the same resolver
+        ExtensionResolver extensionResolver = ExtensionResolver.getInstance(appFrameworkService);
+
+        model.addAttribute("overallActions", extensionResolver.getSortedExtensions("patientDashboard.overallActions", contextModel));
 
         List<Extension> visitActions;
         if (activeVisit == null) {
             visitActions = new ArrayList<Extension>();
         } else {
-            visitActions = appFrameworkService.getExtensionsForCurrentUser("patientDashboard.visitActions", contextModel);
-            Collections.sort(visitActions);
+            visitActions = extensionResolver.getSortedExtensions("patientDashboard.visitActions", contextModel);
         }
         model.addAttribute("visitActions", visitActions);
 
-        List<Extension> includeFragments = appFrameworkService.getExtensionsForCurrentUser("patientDashboard.includeFragments");
-        Collections.sort(includeFragments);
-        model.addAttribute("includeFragments", includeFragments);
-        
-        List<Extension> firstColumnFragments = appFrameworkService.getExtensionsForCurrentUser("patientDashboard.firstColumnFragments");
-        Collections.sort(firstColumnFragments);
-        model.addAttribute("firstColumnFragments", firstColumnFragments);
-        
-        List<Extension> secondColumnFragments = appFrameworkService.getExtensionsForCurrentUser("patientDashboard.secondColumnFragments");
-        Collections.sort(secondColumnFragments);
-        model.addAttribute("secondColumnFragments", secondColumnFragments);
+        model.addAttribute("includeFragments", extensionResolver.getSortedExtensions("patientDashboard.includeFragments"));
+        model.addAttribute("firstColumnFragments", extensionResolver.getSortedExtensions("patientDashboard.firstColumnFragments"));
+        model.addAttribute("secondColumnFragments", extensionResolver.getSortedExtensions("patientDashboard.secondColumnFragments"));
 
-        List<Extension> otherActions = appFrameworkService.getExtensionsForCurrentUser(
+        List<Extension> otherActions = extensionResolver.getSortedExtensions(
                 "clinicianFacingPatientDashboard.otherActions", contextModel);
-        Collections.sort(otherActions);
         model.addAttribute("otherActions", otherActions);
 
         model.addAttribute("dashboardUrl", coreAppsProperties.getDashboardUrl());
@@ -18,13 +18,12 @@ import org.openmrs.Patient;
 import org.openmrs.api.OrderService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.appframework.context.AppContextModel;
-import org.openmrs.module.appframework.domain.Extension;
 import org.openmrs.module.appframework.service.AppFrameworkService;
 import org.openmrs.module.appui.UiSessionContext;
 import org.openmrs.module.coreapps.CoreAppsConstants;
 import org.openmrs.module.coreapps.CoreAppsProperties;
-import org.openmrs.module.coreapps.contextmodel.PatientContextModel;
-import org.openmrs.module.coreapps.contextmodel.VisitContextModel;
+import org.openmrs.module.coreapps.helper.ContextModels;
+import org.openmrs.module.coreapps.helper.ExtensionResolver;
 import org.openmrs.module.emrapi.adt.AdtService;
 import org.openmrs.module.emrapi.event.ApplicationEventService;
 import org.openmrs.module.emrapi.patient.PatientDomainWrapper;
@@ -35,9 +34,6 @@ import org.openmrs.ui.framework.page.PageModel;
 import org.openmrs.ui.framework.page.Redirect;
 import org.springframework.web.bind.annotation.RequestParam;
 
-import java.util.Collections;
-import java.util.List;
-
 public class PatientDashboardPageController {
 
     public Object controller(@RequestParam("patientId") Patient patient,
@@ -75,29 +71,22 @@ public class PatientDashboardPageController {
         }
 		model.addAttribute("activeVisit", activeVisit);
 
-		List<Extension> encounterTemplateExtensions = appFrameworkService
-		        .getExtensionsForCurrentUser(CoreAppsConstants.ENCOUNTER_TEMPLATE_EXTENSION);
-		model.addAttribute("encounterTemplateExtensions", encounterTemplateExtensions);
+        // the patient header and the other fragments of this page look up their extensions through the same resolver
+        ExtensionResolver extensionResolver = ExtensionResolver.getInstance(appFrameworkService);
 
+		model.addAttribute("encounterTemplateExtensions",
+		    extensionResolver.getExtensions(CoreAppsConstants.ENCOUNTER_TEMPLATE_EXTENSION));
 
         AppContextModel contextModel = sessionContext.generateAppContextModel();
-        contextModel.put("patient", new PatientContextModel(patient));
-        contextModel.put("visit", activeVisit == null ? null : new VisitContextModel(activeVisit));
+        ContextModels contextModels = ContextModels.getInstance();
+        contextModel.put("patient", contextModels.getPatientContextModel(patient));
+        contextModel.put("visit", contextModels.getVisitContextModel(activeVisit));
 		model.addAttribute("appContextModel", contextModel);
 
-		List<Extension> overallActions = appFrameworkService.getExtensionsForCurrentUser("patientDashboard.overallActions", contextModel);
-		Collections.sort(overallActions);
-		model.addAttribute("overallActions", overallActions);
-
-        List<Extension> includeFragments = appFrameworkService.getExtensionsForCurrentUser("patientDashboard.includeFragments");
-        Collections.sort(includeFragments);
-        model.addAttribute("includeFragments", includeFragments);
-		
-		List<Extension> visitActions = appFrameworkService.getExtensionsForCurrentUser("patientDashboard.visitActions");
-
-		Collections.sort(visitActions);
-		model.addAttribute("visitActions", visitActions);
-		model.addAttribute("patientTabs", appFrameworkService.getExtensionsForCurrentUser("patientDashboard.tabs"));
+		model.addAttribute("overallActions", extensionResolver.getSortedExtensions("patientDashboard.overallActions", contextModel));
+        model.addAttribute("includeFragments", extensionResolver.getSortedExtensions("patientDashboard.includeFragments"));
+		model.addAttribute("visitActions", extensionResolver.getSortedExtensions("patientDashboard.visitActions"));
+		model.addAttribute("patientTabs", extensionResolver.getExtensions("patientDashboard.tabs"));
 
         model.addAttribute("dashboardUrl", coreAppsProperties.getDashboardUrl());
 
@@ -1,12 +1,56 @@
 $(function() {
 	$(document).on('click','.view-details.collapsed', function(event){
         var jqTarget = $(event.currentTarget);
+        if (jqTarget.data("details-loaded")) {
+            // expanded by "show all details", which already fetched the details
+            jqTarget.removeData("details-loaded");
+            return;
+        }
         var encounterId = jqTarget.data("encounter-id");
         var displayWithHtmlForm = jqTarget.data("encounter-form") && jqTarget.data("display-with-html-form");
         var dataTarget = jqTarget.data("target");
         var customTemplateId = jqTarget.data("display-template");
         getEncounterDetails(encounterId, displayWithHtmlForm, dataTarget, customTemplateId ? customTemplateId : "defaultEncounterDetailsTemplate");
     });
+
+    // fetches the details of all the collapsed encounters of the visit in a single request, and expands them
+    $(document).on('click', '.expand-all-encounter-details', function(event) {
+        var links = [];
+        var encounterIds = [];
+        $('#encountersList .view-details.collapsed').each(function() {
+            var jqTarget = $(this);
+            if (jqTarget.data("encounter-form") && jqTarget.data("display-with-html-form")) {
+                // these are rendered by htmlformentryui, one at a time
+                jqTarget.click();
+            } else {
+                links.push(jqTarget);
+                encounterIds.push(jqTarget.data("encounter-id"));
+                showSpinner(jqTarget.data("target"));
+            }
+        });
+        if (encounterIds.length == 0) {
+            return false;
+        }
+
+        // one encounterIds parameter per encounter
+        $.getJSON(
+            emr.fragmentActionLink("coreapps", "visit/visitDetails", "getEncounterDetailsForEncounters"),
+            $.param({ encounterIds: encounterIds }, true)
+        ).success(function(data) {
+            _.each(links, function(jqTarget) {
+                var details = data[jqTarget.data("encounter-id")];
+                if (details && jqTarget.hasClass("collapsed")) {
+                    var customTemplateId = jqTarget.data("display-template");
+                    showEncounterDetails(jqTarget.data("target"), customTemplateId ? customTemplateId : "defaultEncounterDetailsTemplate", details);
+                    jqTarget.data("details-loaded", true);
+                    jqTarget.click();
+                }
+            });
+        }).error(function(err) {
+            emr.errorAlert(err);
+        });
+        return false;
+    });
 	    
 	$(document).on('click', '.deleteEncounterId', function(event) {
 		var encounterId = $(event.target).attr("data-encounter-id");
@@ -35,12 +79,26 @@ $(function() {
 	//net.sourceforge.htmlunit.corejs.javascript.EcmaError: TypeError: Cannot call method "replace" of undefined
     var detailsTemplates = {};
 
+	function showSpinner(dataTarget) {
+	    var encounterDetailsSection = $(dataTarget + ' .encounter-summary-container');
+	    if (encounterDetailsSection.html() == "") {
+	        encounterDetailsSection.html("<i class=\"icon-spinner icon-spin icon-2x pull-left\"></i>");
+	    }
+	}
+
+	function showEncounterDetails(dataTarget, displayTemplateId, data) {
+	    if (!detailsTemplates[displayTemplateId]) {
+	        detailsTemplates[displayTemplateId] = _.template($('#' + displayTemplateId).html());
+	    }
+	    $(dataTarget + ' .encounter-summary-container').html(detailsTemplates[displayTemplateId](data));
+	}
+
 	function getEncounterDetails(id, displayWithHtmlForm, dataTarget, displayTemplateId) {
 
 	    var encounterDetailsSection = $(dataTarget + ' .encounter-summary-container');
 
         if (displayWithHtmlForm) {
-	    		if(encounterDetailsSection.html() == "") { encounterDetailsSection.html("<i class=\"icon-spinner icon-spin icon-2x pull-left\"></i>");}
+	        showSpinner(dataTarget);
 	        $.getJSON(
 	        		emr.fragmentActionLink("htmlformentryui", "htmlform/viewEncounterWithHtmlForm", "getAsHtml", { encounterId: id })
 	        ).success(function(data){
@@ -50,17 +108,11 @@ $(function() {
 	        });
 	    } else {
 
-            if (!detailsTemplates[displayTemplateId]) {
-                detailsTemplates[displayTemplateId] = _.template($('#' + displayTemplateId).html());
-            }
-
-            var displayTemplate = detailsTemplates[displayTemplateId];
-
-	    		if(encounterDetailsSection.html() == "") { encounterDetailsSection.html("<i class=\"icon-spinner icon-spin icon-2x pull-left\"></i>");}
+	        showSpinner(dataTarget);
 	        $.getJSON(
 	            emr.fragmentActionLink("coreapps", "visit/visitDetails", "getEncounterDetails", { encounterId: id })
 	        ).success(function(data){
-	            encounterDetailsSection.html(displayTemplate(data));
+	            showEncounterDetails(dataTarget, displayTemplateId, data);
 	        }).error(function(err){
 	            emr.errorAlert(err);
 	        });
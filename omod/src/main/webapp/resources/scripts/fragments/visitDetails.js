@@ -1,11 +1,18 @@
 function loadTemplates (visitId, patientId) {
+    var encounterPageSize = 20;
+
+    var currentVisitId = null;
+
     function loadVisit(visitElement) {
         var localVisitId = visitElement.data('visit-id');
+        currentVisitId = localVisitId;
+        $(window).off('scroll.visitEncounters');
 
         visitDetailsSection.html("<i class=\"icon-spinner icon-spin icon-2x pull-left\"></i>");
         $.getJSON(
             emr.fragmentActionLink("coreapps", "visit/visitDetails", "getVisitDetails", {
-                visitId: localVisitId
+                visitId: localVisitId,
+                encounterLimit: encounterPageSize
             })
         ).success(function(data) {
             $('.viewVisitDetails').removeClass('selected');
@@ -22,11 +29,53 @@ function loadTemplates (visitId, patientId) {
                 showDeleteVisitDialog($(this).data('visit-id'));
                 return false;
             });
+
+            if (data.hasMoreEncounters) {
+                loadMoreEncountersOnScroll(localVisitId, data.encounters.length);
+            }
         }).error(function(err) {
             emr.errorMessage(err);
         });
     }
 
+    // fetches the remaining encounters of a long visit a page at a time, as the user scrolls towards the end of the list
+    function loadMoreEncountersOnScroll(localVisitId, offset) {
+        var loading = false;
+
+        $(window).on('scroll.visitEncounters', function() {
+            if (loading || $(window).scrollTop() + $(window).height() < $(document).height() - 200) {
+                return;
+            }
+            loading = true;
+            $.getJSON(
+                emr.fragmentActionLink("coreapps", "visit/visitDetails", "getVisitEncounters", {
+                    visitId: localVisitId,
+                    offset: offset,
+                    limit: encounterPageSize
+                })
+            ).success(function(data) {
+                if (localVisitId != currentVisitId) {
+                    return;  // the user has moved on to another visit
+                }
+                var encountersList = $('#encountersList');
+                _.each(data.encounters, function(encounter) {
+                    encountersList.append(encounterTemplates.displayEncounter(encounter, patient));
+                });
+                offset += data.encounters.length;
+                loading = false;
+                if (!data.hasMore) {
+                    $(window).off('scroll.visitEncounters');
+                }
+            }).error(function(err) {
+                loading = false;
+                emr.errorMessage(err);
+            });
+        });
+
+        // in case the first page does not fill the screen
+        $(window).trigger('scroll.visitEncounters');
+    }
+
     var visitDetailsTemplate = _.template($('#visitDetailsTemplate').html(), null, {
         interpolate : /\[\[=(.+?)\]\]/g ,
         escape : /\[\[-(.+?)\]\]/g ,
@@ -9,6 +9,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -18,6 +19,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -41,6 +43,7 @@ import org.openmrs.api.APIException;
 import org.openmrs.api.ConceptService;
 import org.openmrs.api.LocationService;
 import org.openmrs.api.ObsService;
+import org.openmrs.module.coreapps.db.CoreAppsDAO;
 import org.openmrs.module.coreapps.fragment.controller.patientheader.RegistrationDataHelper.DataContextWrapper;
 import org.openmrs.module.coreapps.fragment.controller.patientheader.RegistrationDataHelper.RegistrationFieldData;
 import org.openmrs.module.coreapps.fragment.controller.patientheader.RegistrationDataHelper.RegistrationFieldData.Data;
@@ -190,6 +193,26 @@ public class RegistrationDataHelperTest {
 		assertEquals(sections.size(), 4);
 	}
 	
+	@Test
+	public void should_returnCopiesOfTheParsedSections() throws IOException {
+		
+		ObjectNode config = getConfigFromResource("regapp_config.json");
+		
+		List<RegistrationSectionData> sections = dataHelper.getSectionsFromConfig("test.registrationapp", config);
+		sections.get(0).setWithObs(true);
+		sections.get(0).getQuestions().get(0).getFields().get(0).getData().add(null);
+		List<RegistrationSectionData> otherSections = dataHelper.getSectionsFromConfig("test.registrationapp", config);
+		
+		assertEquals(otherSections.size(), 4);
+		assertEquals(otherSections.get(0).getId(), sections.get(0).getId());
+		assertFalse(otherSections.get(0).isWithObs());
+		assertTrue(otherSections.get(0).getQuestions().get(0).getFields().get(0).getData().isEmpty());
+		
+		// a reloaded app comes with a new config
+		ObjectNode reloadedConfig = getConfigFromResource("regapp_config_noSections.json");
+		assertTrue(dataHelper.getSectionsFromConfig("test.registrationapp", reloadedConfig).isEmpty());
+	}
+	
 	@Test
 	public void should_getAddressTemplateNameMappings() {
 		
@@ -204,6 +227,18 @@ public class RegistrationDataHelperTest {
 		assertEquals(nameMappings.get("cityVillage"), "Location.cityVillage");
 	}
 	
+	@Test
+	public void should_parseTheAddressTemplateAgainOnlyWhenItChanges() throws IOException {
+		
+		RegistrationFieldData field = new RegistrationFieldData(); 
+		
+		Map<String, String> nameMappings = field.getAddressTemplateNameMappings(locationService);
+		assertTrue(nameMappings == new RegistrationFieldData().getAddressTemplateNameMappings(locationService));
+		
+		when(locationService.getAddressTemplate()).thenReturn(getResourceAsString("addressTemplate.xml").replace("Location.district", "Location.county"));
+		assertEquals(field.getAddressTemplateNameMappings(locationService).get("countyDistrict"), "Location.county");
+	}
+	
 	@Test
 	public void should_getAddressDataInOrder() throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
 		
@@ -318,4 +353,41 @@ public class RegistrationDataHelperTest {
       assertFalse(success);
       verify(log, times(1)).error(anyString());
    }
+
+	@Test
+	public void should_usePrefetchedLatestObs() throws IOException {
+		
+		Concept conceptQuestion = mock(Concept.class);
+		when(conceptQuestion.getConceptId()).thenReturn(5);
+		ConceptDatatype dataType = mock(ConceptDatatype.class);
+		when(dataType.getName()).thenReturn(RegistrationFieldData.CONCEPT_CODED);
+		when(conceptQuestion.getDatatype()).thenReturn(dataType);
+		when(conceptQuestion.getName(any(Locale.class))).thenReturn(mock(ConceptName.class));
+		when(conceptService.getConceptByMapping(eq("12345"), eq("CIEL"))).thenReturn(conceptQuestion);
+		
+		Obs obs = mock(Obs.class);
+		Concept conceptAnswer = mock(Concept.class);
+		when(obs.getValueCoded()).thenReturn(conceptAnswer);
+		ConceptName answerName = mock(ConceptName.class);
+		when(answerName.toString()).thenReturn("obs_answer");
+		when(conceptAnswer.getName(any(Locale.class))).thenReturn(answerName);
+		
+		RegistrationFieldData field = new RegistrationFieldData();
+		field.setType("obs");
+		field.setFormFieldName("obs.CIEL:12345");
+		RegistrationQuestionData question = new RegistrationQuestionData();
+		question.setFields(Collections.singletonList(field));
+		RegistrationSectionData section = new RegistrationSectionData();
+		section.setQuestions(Collections.singletonList(question));
+		
+		CoreAppsDAO coreAppsDAO = mock(CoreAppsDAO.class);
+		when(coreAppsDAO.getLatestObsByConcept(patient, Collections.singleton(conceptQuestion))).thenReturn(Collections.singletonMap(5, obs));
+		
+		dataContext.prefetchLatestObs(coreAppsDAO, Collections.singletonList(section));
+		boolean success = field.fetchObsData(dataContext);
+		
+		assertTrue(success);
+		assertEquals(field.getData().get(0).getValue(), "obs_answer");
+		verify(obsService, never()).getObservationsByPersonAndConcept(any(Patient.class), any(Concept.class));
+	}
 }
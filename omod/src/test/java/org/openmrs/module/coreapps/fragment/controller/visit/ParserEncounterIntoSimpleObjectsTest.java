@@ -23,9 +23,12 @@ import org.openmrs.ConceptDatatype;
 import org.openmrs.Encounter;
 import org.openmrs.Location;
 import org.openmrs.Obs;
+import org.openmrs.Order;
 import org.openmrs.api.ConceptService;
 import org.openmrs.api.LocationService;
 import org.openmrs.module.appui.TestUiUtils;
+import org.openmrs.module.coreapps.OrderCompatibility;
+import org.openmrs.module.coreapps.cache.LocationCache;
 import org.openmrs.module.emrapi.EmrApiProperties;
 import org.openmrs.module.emrapi.concept.EmrConceptService;
 import org.openmrs.module.emrapi.diagnosis.CodedOrFreeTextAnswer;
@@ -53,6 +56,8 @@ import java.util.Set;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -289,6 +294,76 @@ public class ParserEncounterIntoSimpleObjectsTest {
         assertThat(path(parsed.getObs(), 0, "answer"), is((Object) "Xanadu"));
     }
 
+    @Test
+    public void testParsingObsWithLocationAnswerThroughTheLocationCache() throws Exception {
+        ConceptDatatype textDatatype = conceptService.getConceptDatatypeByName("Text");
+        ConceptClass misc = conceptService.getConceptClassByName("Misc");
+
+        Location xanadu = new Location(2);
+        xanadu.setName("Xanadu");
+        when(locationService.getLocation(2)).thenReturn(xanadu);
+        LocationCache locationCache = new LocationCache();
+        locationCache.setLocationService(locationService);
+        parser.setLocationCache(locationCache);
+
+        Concept someLocation = new ConceptBuilder(conceptService, textDatatype, misc).addName("Some location").get();
+
+        encounter.addObs(new ObsBuilder().setConcept(someLocation).setValue("2").setComment("org.openmrs.Location").get());
+        encounter.addObs(new ObsBuilder().setConcept(someLocation).setValue("2").setComment("org.openmrs.Location").get());
+        ParsedObs parsed = parser.parseObservations(Locale.ENGLISH);
+
+        assertThat(parsed.getObs().size(), is(2));
+        assertThat(path(parsed.getObs(), 0, "answer"), is((Object) "Xanadu"));
+        assertThat(path(parsed.getObs(), 1, "answer"), is((Object) "Xanadu"));
+        verify(locationService, times(1)).getLocation(2);
+    }
+
+    @Test
+    public void testParsedObsAreSortedByObsId() throws Exception {
+        ConceptDatatype textDatatype = conceptService.getConceptDatatypeByName("Text");
+        ConceptClass misc = conceptService.getConceptClassByName("Misc");
+        Concept comments = new ConceptBuilder(conceptService, textDatatype, misc).addName("Comments").get();
+
+        encounter.addObs(obsWithId(comments, "unsaved", null));
+        encounter.addObs(obsWithId(comments, "third", 30));
+        encounter.addObs(obsWithId(comments, "first", 10));
+        encounter.addObs(obsWithId(comments, "second", 20));
+        ParsedObs parsed = parser.parseObservations(Locale.ENGLISH);
+
+        assertThat(parsed.getObs().size(), is(4));
+        assertThat(path(parsed.getObs(), 0, "answer"), is((Object) "first"));
+        assertThat(path(parsed.getObs(), 1, "answer"), is((Object) "second"));
+        assertThat(path(parsed.getObs(), 2, "answer"), is((Object) "third"));
+        assertThat(path(parsed.getObs(), 3, "answer"), is((Object) "unsaved"));
+    }
+
+    @Test
+    public void testParsingOrdersShowsTheirOrderNumbers() throws Exception {
+        ConceptDatatype naDatatype = conceptService.getConceptDatatypeByName("N/A");
+        ConceptClass misc = conceptService.getConceptClassByName("Misc");
+        Concept xRay = new ConceptBuilder(conceptService, naDatatype, misc).addName("Chest x-ray").get();
+
+        Order order = new Order();
+        order.setConcept(xRay);
+        encounter.addOrder(order);
+
+        OrderCompatibility orderCompatibility = mock(OrderCompatibility.class);
+        when(orderCompatibility.getOrderNumber(order)).thenReturn("ORD-42");
+        parser.setOrderCompatibility(orderCompatibility);
+
+        List<SimpleObject> orders = parser.parseOrders();
+
+        assertThat(orders.size(), is(1));
+        assertThat(path(orders, 0, "concept"), is((Object) "Chest x-ray"));
+        assertThat(path(orders, 0, "orderNumber"), is((Object) "ORD-42"));
+    }
+
+    private Obs obsWithId(Concept concept, String valueText, Integer obsId) {
+        Obs obs = new ObsBuilder().setConcept(concept).setValue(valueText).get();
+        obs.setObsId(obsId);
+        return obs;
+    }
+
 	private Object path(Object simpleObjectOrList, Object... paths) {
 		Object current = simpleObjectOrList;
 		for (Object path : paths) {
@@ -16,11 +16,14 @@ package org.openmrs.module.coreapps.fragment.controller.visit;
 import org.hamcrest.Matcher;
 import org.junit.Test;
 import org.mockito.ArgumentMatcher;
+import org.openmrs.Concept;
+import org.openmrs.ConceptName;
 import org.openmrs.Encounter;
 import org.openmrs.EncounterProvider;
 import org.openmrs.EncounterRole;
 import org.openmrs.EncounterType;
 import org.openmrs.Location;
+import org.openmrs.Order;
 import org.openmrs.Patient;
 import org.openmrs.Privilege;
 import org.openmrs.Provider;
@@ -29,32 +32,46 @@ import org.openmrs.User;
 import org.openmrs.Visit;
 import org.openmrs.api.AdministrationService;
 import org.openmrs.api.EncounterService;
+import org.openmrs.api.LocationService;
 import org.openmrs.module.appframework.context.AppContextModel;
 import org.openmrs.module.appframework.domain.Extension;
 import org.openmrs.module.appframework.service.AppFrameworkService;
 import org.openmrs.module.appui.TestUiUtils;
 import org.openmrs.module.appui.UiSessionContext;
 import org.openmrs.module.coreapps.CoreAppsConstants;
+import org.openmrs.module.coreapps.OrderCompatibility;
+import org.openmrs.module.coreapps.cache.LocationCache;
+import org.openmrs.module.coreapps.db.CoreAppsDAO;
 import org.openmrs.module.emrapi.EmrApiConstants;
 import org.openmrs.module.emrapi.EmrApiProperties;
+import org.openmrs.module.emrapi.diagnosis.DiagnosisMetadata;
+import org.openmrs.module.emrapi.disposition.DispositionService;
 import org.openmrs.ui.framework.SimpleObject;
 import org.openmrs.ui.framework.UiFrameworkConstants;
 import org.openmrs.ui.framework.UiUtils;
 import org.openmrs.util.OpenmrsUtil;
 
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
+import static java.util.Arrays.asList;
 import static junit.framework.Assert.assertTrue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsNull.notNullValue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class VisitDetailsFragmentControllerTest {
@@ -129,12 +146,16 @@ public class VisitDetailsFragmentControllerTest {
 		encounter.setCreator(authenticatedUser);
 		
 		visit.addEncounter(encounter);
+
+        CoreAppsDAO coreAppsDAO = mock(CoreAppsDAO.class);
+        when(coreAppsDAO.getEncountersWithDetails(visit, 0, null)).thenReturn(asList(encounter));
+        when(coreAppsDAO.getEncounterCount(visit)).thenReturn(1);
 		
 		UiUtils uiUtils = new TestUiUtils(administrationService);
 		VisitDetailsFragmentController controller = new VisitDetailsFragmentController();
 		
 		SimpleObject response = controller.getVisitDetails(mock(EmrApiProperties.class), appFrameworkService, encounterService,
-                visit, uiUtils, sessionContext);
+                coreAppsDAO, visit, null, uiUtils, sessionContext);
 		List<SimpleObject> actualEncounters = (List<SimpleObject>) response.get("encounters");
 		SimpleObject actualEncounter = actualEncounters.get(0);
 		
@@ -156,6 +177,118 @@ public class VisitDetailsFragmentControllerTest {
 		assertThat(actualProviders.size(), is(2));
 	}
 
+    @Test
+    public void shouldOnlyLoadTheRequestedPageOfEncounters() {
+        UiSessionContext sessionContext = mock(UiSessionContext.class);
+        User authenticatedUser = new User();
+        when(sessionContext.getCurrentUser()).thenReturn(authenticatedUser);
+
+        AdministrationService administrationService = mock(AdministrationService.class);
+        when(administrationService.getGlobalProperty(UiFrameworkConstants.GP_FORMATTER_DATETIME_FORMAT)).thenReturn(
+                "dd.MMM.yyyy, HH:mm:ss");
+
+        AppFrameworkService appFrameworkService = mock(AppFrameworkService.class);
+        when(appFrameworkService.getExtensionsForCurrentUser(CoreAppsConstants.ENCOUNTER_TEMPLATE_EXTENSION))
+                .thenReturn(generateMockEncounterTemplateExtensions());
+
+        Visit visit = new Visit(1);
+        Encounter third = createEncounter(3, authenticatedUser);
+        Encounter fourth = createEncounter(4, authenticatedUser);
+        Encounter fifth = createEncounter(5, authenticatedUser);
+
+        CoreAppsDAO coreAppsDAO = mock(CoreAppsDAO.class);
+        when(coreAppsDAO.getEncounterCount(visit)).thenReturn(5);
+        when(coreAppsDAO.getEncountersWithDetails(visit, 2, 2)).thenReturn(asList(third, fourth));
+        when(coreAppsDAO.getEncountersWithDetails(visit, 4, 2)).thenReturn(asList(fifth));
+
+        VisitDetailsFragmentController controller = new VisitDetailsFragmentController();
+        UiUtils uiUtils = new TestUiUtils(administrationService);
+
+        SimpleObject page = controller.getVisitEncounters(appFrameworkService, mock(EncounterService.class),
+                coreAppsDAO, visit, 2, 2, uiUtils, sessionContext);
+
+        assertThat(encounterIds(page), is(asList(3, 4)));
+        assertThat((Integer) page.get("offset"), is(2));
+        assertThat((Integer) page.get("totalCount"), is(5));
+        assertThat((Boolean) page.get("hasMore"), is(true));
+
+        SimpleObject lastPage = controller.getVisitEncounters(appFrameworkService, mock(EncounterService.class),
+                coreAppsDAO, visit, 4, 2, uiUtils, sessionContext);
+
+        assertThat(encounterIds(lastPage), is(asList(5)));
+        assertThat((Boolean) lastPage.get("hasMore"), is(false));
+        verify(coreAppsDAO, never()).getEncountersWithDetails(visit, 0, null);
+    }
+
+    private Encounter createEncounter(Integer encounterId, User creator) {
+        EncounterType encounterType = new EncounterType();
+        encounterType.setName("Encounter Type");
+        encounterType.setUuid(encounterTypeUuid);
+
+        Encounter encounter = new Encounter(encounterId);
+        encounter.setEncounterDatetime(new Date());
+        encounter.setEncounterType(encounterType);
+        encounter.setEncounterProviders(new LinkedHashSet<EncounterProvider>());
+        encounter.setCreator(creator);
+        return encounter;
+    }
+
+    private List<Integer> encounterIds(SimpleObject page) {
+        List<Integer> encounterIds = new ArrayList<Integer>();
+        for (SimpleObject encounter : (List<SimpleObject>) page.get("encounters")) {
+            encounterIds.add((Integer) encounter.get("encounterId"));
+        }
+        return encounterIds;
+    }
+
+    @Test
+    public void shouldReturnTheDetailsOfSeveralEncountersAtOnce() {
+        Encounter first = encounterWithOrder(7, "ORD-1");
+        Encounter second = encounterWithOrder(8, "ORD-2");
+        List<Integer> encounterIds = asList(7, 8, 9);
+
+        EncounterService encounterService = mock(EncounterService.class);
+        when(encounterService.getEncounter(7)).thenReturn(first);
+        when(encounterService.getEncounter(8)).thenReturn(second);
+        EmrApiProperties emrApiProperties = mock(EmrApiProperties.class);
+        when(emrApiProperties.getDiagnosisMetadata()).thenReturn(mock(DiagnosisMetadata.class));
+        CoreAppsDAO coreAppsDAO = mock(CoreAppsDAO.class);
+        OrderCompatibility orderCompatibility = mock(OrderCompatibility.class);
+        for (Encounter encounter : asList(first, second)) {
+            Order order = encounter.getOrders().iterator().next();
+            when(orderCompatibility.getOrderNumber(order)).thenReturn(order.getAccessionNumber());
+        }
+        TestUiUtils uiUtils = new TestUiUtils();
+        uiUtils.setMockFormattingConcepts(true);
+
+        SimpleObject response = new VisitDetailsFragmentController().getEncounterDetailsForEncounters(encounterIds,
+                emrApiProperties, mock(LocationService.class), mock(DispositionService.class), encounterService,
+                coreAppsDAO, mock(LocationCache.class), orderCompatibility, uiUtils);
+
+        verify(coreAppsDAO, times(1)).getEncountersWithObsAndOrders(encounterIds);
+        assertThat(response.keySet(), is((Set<String>) new HashSet<String>(asList("7", "8"))));
+        assertThat(getOrderNumber(response, "7"), is((Object) "ORD-1"));
+        assertThat(getOrderNumber(response, "8"), is((Object) "ORD-2"));
+    }
+
+    private Encounter encounterWithOrder(Integer encounterId, String orderNumber) {
+        Concept concept = new Concept(encounterId);
+        concept.addName(new ConceptName("Order " + orderNumber, Locale.ENGLISH));
+        Order order = new Order();
+        order.setConcept(concept);
+        order.setAccessionNumber(orderNumber);
+
+        Encounter encounter = new Encounter(encounterId);
+        encounter.addOrder(order);
+        return encounter;
+    }
+
+    private Object getOrderNumber(SimpleObject encounterDetails, String encounterId) {
+        List<SimpleObject> orders = (List<SimpleObject>) ((SimpleObject) encounterDetails.get(encounterId)).get("orders");
+        assertThat(orders.size(), is(1));
+        return orders.get(0).get("orderNumber");
+    }
+
     private Role createRoleForUser() {
         Role role = new Role();
         role.setRole("Test");
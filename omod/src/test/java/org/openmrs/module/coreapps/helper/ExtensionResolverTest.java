@@ -0,0 +1,124 @@
+package org.openmrs.module.coreapps.helper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.module.appframework.context.AppContextModel;
+import org.openmrs.module.appframework.domain.Extension;
+import org.openmrs.module.appframework.service.AppFrameworkService;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ExtensionResolverTest {
+
+    private AppFrameworkService appFrameworkService;
+
+    private Extension secondAction;
+
+    private Extension firstAction;
+
+    private Extension firstLineFragment;
+
+    @Before
+    public void setUp() {
+        secondAction = createExtension("second", "patientDashboard.overallActions", 2);
+        firstAction = createExtension("first", "patientDashboard.overallActions", 1);
+        firstLineFragment = createExtension("fragment", "patientHeader.firstLineFragments", 0);
+
+        appFrameworkService = mock(AppFrameworkService.class);
+        when(appFrameworkService.getExtensionsForCurrentUser(null)).thenReturn(
+                asList(secondAction, firstLineFragment, firstAction));
+    }
+
+    @After
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    public void shouldFetchTheExtensionsOfAllExtensionPointsOnce() {
+        ExtensionResolver resolver = new ExtensionResolver(appFrameworkService);
+
+        assertThat(resolver.getExtensions("patientDashboard.overallActions"), is(asList(secondAction, firstAction)));
+        assertThat(resolver.getSortedExtensions("patientDashboard.overallActions"), is(asList(firstAction, secondAction)));
+        assertThat(resolver.getSortedExtensions("patientHeader.firstLineFragments"), is(asList(firstLineFragment)));
+        assertTrue(resolver.getSortedExtensions("patientDashboard.visitActions").isEmpty());
+
+        verify(appFrameworkService, times(1)).getExtensionsForCurrentUser(null);
+    }
+
+    @Test
+    public void shouldReturnCopiesOfTheSortedExtensions() {
+        ExtensionResolver resolver = new ExtensionResolver(appFrameworkService);
+
+        resolver.getSortedExtensions("patientDashboard.overallActions").clear();
+
+        assertThat(resolver.getSortedExtensions("patientDashboard.overallActions"), is(asList(firstAction, secondAction)));
+    }
+
+    @Test
+    public void shouldEvaluateTheRequireExpressionsAgainstTheSameContextModelOnce() {
+        Map<String, Object> visit = new HashMap<String, Object>();
+        visit.put("active", false);
+        AppContextModel contextModel = new AppContextModel();
+        contextModel.put("visit", visit);
+        secondAction.setRequire("!visit.active");
+        firstAction.setRequire("visit.active");
+        ExtensionResolver resolver = new ExtensionResolver(appFrameworkService);
+
+        resolver.getSortedExtensions("patientDashboard.overallActions", contextModel);
+        visit.put("active", true);
+        List<Extension> overallActions = resolver.getSortedExtensions("patientDashboard.overallActions", contextModel);
+
+        assertThat(overallActions, is(asList(secondAction)));
+        verify(appFrameworkService, never()).getExtensionsForCurrentUser("patientDashboard.overallActions", contextModel);
+    }
+
+    @Test
+    public void shouldLeaveRequireExpressionsCallingFunctionsToTheAppFrameworkService() {
+        AppContextModel contextModel = new AppContextModel();
+        secondAction.setRequire("hasMemberWithProperty(visit.encounters, 'encounterType', 'abc')");
+        firstAction.setRequire("hasMemberWithProperty(visit.encounters, 'encounterType', 'def')");
+        when(appFrameworkService.getExtensionsForCurrentUser("patientDashboard.overallActions", contextModel))
+                .thenReturn(asList(secondAction));
+        ExtensionResolver resolver = new ExtensionResolver(appFrameworkService);
+
+        List<Extension> overallActions = resolver.getSortedExtensions("patientDashboard.overallActions", contextModel);
+
+        assertThat(overallActions, is(asList(secondAction)));
+        verify(appFrameworkService, times(1)).getExtensionsForCurrentUser("patientDashboard.overallActions", contextModel);
+    }
+
+    @Test
+    public void shouldShareTheResolverWithinARequest() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+
+        ExtensionResolver resolver = ExtensionResolver.getInstance(appFrameworkService);
+
+        assertSame(resolver, ExtensionResolver.getInstance(appFrameworkService));
+    }
+
+    private Extension createExtension(String id, String extensionPointId, int order) {
+        Extension extension = new Extension();
+        extension.setId(id);
+        extension.setExtensionPointId(extensionPointId);
+        extension.setOrder(order);
+        return extension;
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.coreapps;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.openmrs.Order;
+import org.openmrs.annotation.OpenmrsProfile;
+import org.springframework.stereotype.Component;
+
+@Component("coreapps.OrderCompatibility")
+@OpenmrsProfile(openmrsPlatformVersion = "1.9.9 - 1.12.*")
+public class OrderCompatibility1_9 implements OrderCompatibility {
+
+	// Order.getOrderNumber only exists in 1.10+, so it is looked up (once) by reflection
+	private final Method getOrderNumber;
+
+	public OrderCompatibility1_9() {
+		Method method = null;
+		try {
+			method = Order.class.getMethod("getOrderNumber");
+		}
+		catch (NoSuchMethodException e) {
+			// core 1.9, we display the accession number instead
+		}
+		getOrderNumber = method;
+	}
+
+	@Override
+	public String getOrderNumber(Order order) {
+		if (getOrderNumber == null) {
+			return order.getAccessionNumber();
+		}
+		try {
+			return (String) getOrderNumber.invoke(order);
+		}
+		catch (IllegalAccessException e) {
+			throw new IllegalStateException("Cannot get the order number of " + order, e);
+		}
+		catch (InvocationTargetException e) {
+			throw new IllegalStateException("Cannot get the order number of " + order, e.getCause());
+		}
+	}
+}
@@ -19,11 +19,17 @@ import java.util.Map;
 import org.openmrs.annotation.OpenmrsProfile;
 import org.openmrs.layout.address.AddressSupport;
 import org.openmrs.layout.address.AddressTemplate;
+import org.openmrs.module.coreapps.layout.AddressLayout;
 import org.springframework.stereotype.Component;
 
 @Component("coreapps.AddressSupportCompatibility")
 @OpenmrsProfile(openmrsPlatformVersion = "2.0.*")
 public class AddressSupportCompatibility2_0 implements AddressSupportCompatibility {
+	
+	// the template that addressLayout was compiled from
+	private AddressTemplate compiledTemplate;
+	
+	private AddressLayout addressLayout;
 
 	@Override
 	public Map<String, String> getNameMappings() {
@@ -35,6 +41,17 @@ public class AddressSupportCompatibility2_0 implements AddressSupportCompatibili
 		return getDefaultLayoutTemplate().getLineByLineFormat();
 	}
 
+	@Override
+	public synchronized AddressLayout getAddressLayout() {
+		AddressTemplate template = getDefaultLayoutTemplate();
+		// a different template is the default one once the address template global property changed
+		if (addressLayout == null || compiledTemplate != template) {
+			addressLayout = AddressLayout.compile(template.getLineByLineFormat(), template.getNameMappings().keySet());
+			compiledTemplate = template;
+		}
+		return addressLayout;
+	}
+
 	private AddressTemplate getDefaultLayoutTemplate() {
 		return AddressSupport.getInstance().getDefaultLayoutTemplate();
 	}
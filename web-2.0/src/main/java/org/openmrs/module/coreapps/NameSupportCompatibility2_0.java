@@ -19,11 +19,17 @@ import java.util.Map;
 import org.openmrs.annotation.OpenmrsProfile;
 import org.openmrs.layout.name.NameSupport;
 import org.openmrs.layout.name.NameTemplate;
+import org.openmrs.module.coreapps.layout.NameLayout;
 import org.springframework.stereotype.Component;
 
 @Component("coreapps.NameSupportCompatibility")
 @OpenmrsProfile(openmrsPlatformVersion = "2.0.*")
 public class NameSupportCompatibility2_0 implements NameSupportCompatibility {
+	
+	// the template that nameLayout was compiled from
+	private NameTemplate compiledTemplate;
+	
+	private NameLayout nameLayout;
 
 	@Override
 	public List<List<Map<String, String>>> getLines() {
@@ -40,6 +46,17 @@ public class NameSupportCompatibility2_0 implements NameSupportCompatibility {
 		return getDefaultLayoutTemplate().getNameMappings();
 	}
 	
+	@Override
+	public synchronized NameLayout getNameLayout() {
+		NameTemplate template = getDefaultLayoutTemplate();
+		// a different template is the default one once the name layout global property changed
+		if (nameLayout == null || compiledTemplate != template) {
+			nameLayout = NameLayout.compile(template.getLines(), template.getLayoutToken(), template.getNameMappings());
+			compiledTemplate = template;
+		}
+		return nameLayout;
+	}
+	
 	private NameTemplate getDefaultLayoutTemplate() {
 		return NameSupport.getInstance().getDefaultLayoutTemplate();
 	}